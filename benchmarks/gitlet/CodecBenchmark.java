@@ -0,0 +1,130 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/* Compares the on-disk size and save/load time of commits written with
+   ObjectOutputStream against the Codec format.
+
+   Usage (from the repository root):
+       javac -d out/bench benchmarks/gitlet/*.java gitlet/*.java
+       java -cp out/bench gitlet.CodecBenchmark [COMMITS,...] [FILES]
+
+   COMMITS defaults to 10000,100000 and FILES (files tracked per commit) to
+   20. Each commit changes one file of its parent. "single" is the old
+   layout with the whole history in one serialized stream; "java" and
+   "codec" write one object per commit, as ObjectStore.COMMITS does. */
+public class CodecBenchmark {
+
+    public static void main(String... args) throws IOException {
+        String[] sizes = (args.length > 0 ? args[0] : "10000,100000").split(",");
+        int files = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        System.out.printf("%-8s %-7s %12s %10s %10s%n",
+                          "commits", "format", "bytes", "save ms", "load ms");
+        for (String size : sizes) {
+            List<Commit> history = history(Integer.parseInt(size), files);
+            /* Run once to warm up, then report the second run. */
+            run(history, false);
+            run(history, true);
+        }
+    }
+
+    /* Returns a linear history of N commits, each tracking FILES files. */
+    static List<Commit> history(int n, int files) {
+        List<Commit> result = new ArrayList<>(n);
+        HashMap<String, String> filesMap = new HashMap<>();
+        for (int i = 0; i < files; i += 1) {
+            filesMap.put("file" + i + ".txt", Utils.sha1("blob", "" + i));
+        }
+        Commit parent = null;
+        for (int i = 0; i < n; i += 1) {
+            filesMap = new HashMap<>(filesMap);
+            filesMap.put("file" + (i % files) + ".txt", Utils.sha1("blob", "" + i, "v"));
+            String id = Utils.sha1("commit", "" + i);
+            Commit commit = new Commit("commit number " + i, "2018-07-01 12:00:00",
+                                       parent, filesMap, id);
+            result.add(commit);
+            parent = commit;
+        }
+        return result;
+    }
+
+    private static void run(List<Commit> history, boolean report) throws IOException {
+        File dir = Files.createTempDirectory("gitlet-codec").toFile();
+        try {
+            long start = System.nanoTime();
+            File single = new File(dir, "single");
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(stream)) {
+                out.writeObject(new ArrayList<>(history));
+            }
+            Utils.writeContents(single, stream.toByteArray());
+            long saved = System.nanoTime();
+            Utils.deserialize(Utils.readContents(single), ArrayList.class);
+            long loaded = System.nanoTime();
+            if (report) {
+                print(history.size(), "single", single.length(), start, saved, loaded);
+            }
+
+            File javaDir = new File(dir, "java");
+            javaDir.mkdirs();
+            start = System.nanoTime();
+            long bytes = 0;
+            for (Commit commit : history) {
+                byte[] data = Utils.serialize(commit);
+                bytes += data.length;
+                Utils.writeContents(new File(javaDir, commit.id), data);
+            }
+            saved = System.nanoTime();
+            for (Commit commit : history) {
+                Utils.deserialize(Utils.readContents(new File(javaDir, commit.id)), Commit.class);
+            }
+            loaded = System.nanoTime();
+            if (report) {
+                print(history.size(), "java", bytes, start, saved, loaded);
+            }
+
+            File codecDir = new File(dir, "codec");
+            codecDir.mkdirs();
+            start = System.nanoTime();
+            bytes = 0;
+            for (Commit commit : history) {
+                byte[] data = Codec.encodeCommit(commit);
+                bytes += data.length;
+                Utils.writeContents(new File(codecDir, commit.id), data);
+            }
+            saved = System.nanoTime();
+            for (Commit commit : history) {
+                Codec.decodeCommit(Utils.readContents(new File(codecDir, commit.id)));
+            }
+            loaded = System.nanoTime();
+            if (report) {
+                print(history.size(), "codec", bytes, start, saved, loaded);
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    private static void print(int commits, String format, long bytes,
+                              long start, long saved, long loaded) {
+        System.out.printf("%-8d %-7s %12d %10d %10d%n", commits, format, bytes,
+                          (saved - start) / 1000000, (loaded - saved) / 1000000);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
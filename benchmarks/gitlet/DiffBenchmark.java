@@ -0,0 +1,94 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/* Times Diff on large texts and on inputs that are hard for Myers'
+   algorithm.
+
+   Usage (from the repository root):
+       javac -d out/bench benchmarks/gitlet/*.java gitlet/*.java
+       java -Xmx2g -cp out/bench gitlet.DiffBenchmark [MEGABYTES]
+
+   MEGABYTES (default 100) is the size of the large texts. The cases are:
+   "scattered", the large text against a copy with 200 lines changed;
+   "unrelated", two large texts with no line in common; "alphabet", two
+   random texts of 200000 lines drawn from only four distinct lines, so
+   that almost every line matches many others; and "shifted", a text
+   against itself with every other line dropped. "ms" is the time to
+   compare, "out ms" the time to write the unified diff. */
+public class DiffBenchmark {
+
+    public static void main(String... args) {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        Random random = new Random(17);
+        byte[] large = text(megabytes << 20, random, "line");
+        System.out.printf("%-10s %10s %10s %10s %10s%n",
+                          "case", "lines", "edits", "ms", "out ms");
+        run("scattered", large, scatter(large, 200, random));
+        run("unrelated", large, text(megabytes << 20, random, "other"));
+        run("alphabet", alphabet(200000, random), alphabet(200000, random));
+        run("shifted", large, everyOther(large));
+    }
+
+    /* Returns about SIZE bytes of distinct lines starting with PREFIX. */
+    static byte[] text(int size, Random random, String prefix) {
+        StringBuilder text = new StringBuilder(size + 100);
+        for (int i = 0; text.length() < size; i += 1) {
+            text.append(prefix).append(' ').append(i).append(' ').append(random.nextInt())
+                .append(" lorem ipsum dolor sit amet\n");
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /* Returns TEXT with N random lines replaced. */
+    static byte[] scatter(byte[] text, int n, Random random) {
+        String[] lines = new String(text, StandardCharsets.UTF_8).split("\n", -1);
+        for (int k = 0; k < n; k += 1) {
+            int i = random.nextInt(lines.length - 1);
+            lines[i] = "changed " + i;
+        }
+        return String.join("\n", lines).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /* Returns N random lines each of which is one of four. */
+    static byte[] alphabet(int n, Random random) {
+        StringBuilder text = new StringBuilder(2 * n);
+        for (int i = 0; i < n; i += 1) {
+            text.append(random.nextInt(4)).append('\n');
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /* Returns the even-numbered lines of TEXT. */
+    static byte[] everyOther(byte[] text) {
+        String[] lines = new String(text, StandardCharsets.UTF_8).split("\n");
+        StringBuilder result = new StringBuilder(text.length / 2 + 100);
+        for (int i = 0; i < lines.length; i += 2) {
+            result.append(lines[i]).append('\n');
+        }
+        return result.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void run(String name, byte[] a, byte[] b) {
+        /* Run once to warm up, then report the second run. */
+        new Diff(a, b);
+        long start = System.nanoTime();
+        Diff diff = new Diff(a, b);
+        long compared = System.nanoTime();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        diff.writeUnified(new PrintStream(bytes), "a", "b");
+        long written = System.nanoTime();
+        int edits = 0;
+        for (boolean d : diff.deleted) {
+            edits += d ? 1 : 0;
+        }
+        for (boolean i : diff.inserted) {
+            edits += i ? 1 : 0;
+        }
+        System.out.printf("%-10s %10d %10d %10d %10d%n", name, diff.a.count + diff.b.count,
+                          edits, (compared - start) / 1000000, (written - compared) / 1000000);
+    }
+}
@@ -0,0 +1,272 @@
+package gitlet;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/* Builds a synthetic repository in the current directory, for measuring
+   how gitlet scales.
+
+   Usage (from the directory to fill, which must not hold a repository):
+       java -cp out/bench gitlet.RepoGenerator [OPTIONS]
+
+   OPTIONS may include
+       --commits=N      Commits to make after the initial one (default 1000).
+       --branches=N     Branches, master included, that commits are spread
+                        over round-robin (default 4).
+       --merge-every=N  After every Nth commit made on a branch other than
+                        master, merge that branch into master; 0 for no
+                        merges (default 10).
+       --files=N        Files in the first commit (default 200).
+       --dirs=N         Directories the files are spread over (default 10).
+       --size=BYTES     Median file size (default 2048). Sizes follow a
+                        log-normal distribution, as file sizes in real
+                        repositories roughly do, capped at --max-size.
+       --max-size=BYTES Largest file size (default 1048576).
+       --binary=PERCENT Percentage of files that hold random bytes rather
+                        than lines of text (default 0).
+       --add=PERCENT    Percentage of commits that also add a new file
+                        (default 5).
+       --seed=N         Seed of the random choices (default 1).
+
+   Each commit changes one to three files: a text file has a few of its
+   lines replaced, a binary file is rewritten. The same options and seed
+   always give the same files and the same history, though commit ids
+   differ with the time they were made. Commands run through Command in
+   this JVM, as a batch would, and the repository is saved once at the
+   end as Main saves it. */
+public class RepoGenerator {
+
+    int commits = 1000;
+    int branches = 4;
+    int mergeEvery = 10;
+    int files = 200;
+    int dirs = 10;
+    int size = 2048;
+    int maxSize = 1 << 20;
+    int binary = 0;
+    int add = 5;
+    long seed = 1;
+
+    /* The repository being built. */
+    Container container;
+
+    private Random random;
+
+    /* Whether each file holds random bytes, by number. */
+    private final List<Boolean> binaries = new ArrayList<>();
+
+    public static void main(String... args) {
+        RepoGenerator generator = new RepoGenerator();
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            if (option.length != 2) {
+                usage(arg);
+            }
+            long value;
+            try {
+                value = Long.parseLong(option[1]);
+            } catch (NumberFormatException excp) {
+                usage(arg);
+                return;
+            }
+            switch (option[0]) {
+                case "--commits": generator.commits = (int) value; break;
+                case "--branches": generator.branches = (int) value; break;
+                case "--merge-every": generator.mergeEvery = (int) value; break;
+                case "--files": generator.files = (int) value; break;
+                case "--dirs": generator.dirs = (int) value; break;
+                case "--size": generator.size = (int) value; break;
+                case "--max-size": generator.maxSize = (int) value; break;
+                case "--binary": generator.binary = (int) value; break;
+                case "--add": generator.add = (int) value; break;
+                case "--seed": generator.seed = value; break;
+                default: usage(arg);
+            }
+        }
+        if (Command.GITLETDIR.exists()) {
+            System.err.println("A gitlet repository already exists here.");
+            System.exit(1);
+        }
+        long start = System.nanoTime();
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        generator.generate();
+        generator.save();
+        System.setOut(out);
+        System.out.printf("Generated %d files in %d commits on %d branches in %d ms.%n",
+                          generator.binaries.size(), generator.container.graph().size(),
+                          generator.container.getBranches().size(),
+                          (System.nanoTime() - start) / 1000000);
+    }
+
+    private static void usage(String arg) {
+        System.err.println("Bad option: " + arg);
+        System.exit(1);
+    }
+
+    /* Builds the repository, leaving master checked out, and returns its
+       container. Nothing is saved until save is called. */
+    Container generate() {
+        random = new Random(seed);
+        container = command(null, "init");
+        for (int i = 0; i < files; i += 1) {
+            create();
+        }
+        container = command(container, "commit", "initial files");
+        /* Each branch starts at its own commit, since checkout will not
+           switch to a branch at the current commit. */
+        List<String> names = new ArrayList<>();
+        names.add("master");
+        for (int k = 1; k < branches; k += 1) {
+            change("branch point " + k);
+            names.add("b" + k);
+            container = command(container, "branch", "b" + k);
+        }
+        int sideCommits = 0;
+        for (int c = 0; c < commits; c += 1) {
+            String name = names.get(c % names.size());
+            checkout(name);
+            if (random.nextInt(100) < add) {
+                create();
+            }
+            change("commit " + c);
+            if (!name.equals("master")) {
+                sideCommits += 1;
+                if (mergeEvery > 0 && sideCommits % mergeEvery == 0) {
+                    merge(name, "resolve " + c);
+                }
+            }
+        }
+        checkout("master");
+        return container;
+    }
+
+    /* Merges the branch NAME into master, committing any conflicts, markers
+       and all, with MESSAGE. */
+    void merge(String name, String message) {
+        checkout("master");
+        String head = container.getCurrPointer().id;
+        container = command(container, "merge", name);
+        if (container.getCurrPointer().id.equals(head)) {
+            Map<String, String> ours = container.getCurrPointer().files();
+            for (Map.Entry<String, String> file
+                     : container.branchHead(name).files().entrySet()) {
+                if (!file.getValue().equals(ours.get(file.getKey()))
+                    && new File(file.getKey()).isFile()) {
+                    container = command(container, "add", file.getKey());
+                }
+            }
+            container = command(container, "commit", message);
+        }
+    }
+
+    /* Saves the repository as Main does. */
+    void save() {
+        Journal.open().save(container);
+        container.index().save();
+    }
+
+    /* Returns the path of file I. */
+    String path(int i) {
+        String extension = binaries.get(i) ? ".bin" : ".txt";
+        return "d" + (i % dirs) + "/f" + i + extension;
+    }
+
+    /* Returns the number of files made so far. */
+    int count() {
+        return binaries.size();
+    }
+
+    /* Checks out the branch NAME unless it is current. */
+    void checkout(String name) {
+        if (!name.equals(container.currBranch)) {
+            container = command(container, "checkout", name);
+        }
+    }
+
+    /* Makes a new file and stages it. */
+    private void create() {
+        binaries.add(random.nextInt(100) < binary);
+        int i = binaries.size() - 1;
+        File file = new File(path(i));
+        file.getParentFile().mkdirs();
+        long length = Math.round(size * Math.exp(random.nextGaussian()));
+        length = Math.max(1, Math.min(maxSize, length));
+        byte[] contents;
+        if (binaries.get(i)) {
+            contents = new byte[(int) length];
+            random.nextBytes(contents);
+        } else {
+            StringBuilder text = new StringBuilder((int) length + 80);
+            while (text.length() < length) {
+                text.append(line()).append('\n');
+            }
+            contents = text.toString().getBytes(StandardCharsets.UTF_8);
+        }
+        Utils.writeContents(file, contents);
+        container = command(container, "add", path(i));
+    }
+
+    /* Changes one to three files and commits them with MESSAGE. */
+    void change(String message) {
+        for (int k = 1 + random.nextInt(3); k > 0; k -= 1) {
+            edit(random.nextInt(binaries.size()));
+        }
+        container = command(container, "commit", message);
+    }
+
+    /* Changes file I and stages it. */
+    void edit(int i) {
+        rewrite(i);
+        container = command(container, "add", path(i));
+    }
+
+    /* Changes file I: a few lines replaced if it is text, new bytes if it
+       is binary. A file missing from the current branch is made afresh. */
+    void rewrite(int i) {
+        File file = new File(path(i));
+        byte[] contents;
+        if (!file.isFile()) {
+            file.getParentFile().mkdirs();
+            contents = (line() + "\n").getBytes(StandardCharsets.UTF_8);
+        } else if (binaries.get(i)) {
+            contents = new byte[(int) file.length()];
+            random.nextBytes(contents);
+        } else {
+            String[] lines = new String(Utils.readContents(file), StandardCharsets.UTF_8)
+                .split("\n", -1);
+            for (int k = 1 + random.nextInt(3); k > 0; k -= 1) {
+                lines[random.nextInt(lines.length)] = line();
+            }
+            contents = String.join("\n", lines).getBytes(StandardCharsets.UTF_8);
+        }
+        Utils.writeContents(file, contents);
+    }
+
+    /* Returns a random line of text of forty to eighty characters. */
+    private String line() {
+        StringBuilder line = new StringBuilder(80);
+        for (int n = 40 + random.nextInt(40); line.length() < n; ) {
+            line.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        }
+        return line.toString().trim();
+    }
+
+    private static final String[] WORDS = {
+        "int", "return", "if", "else", "for", "while", "class", "void", "new", "this",
+        "public", "private", "static", "final", "String", "List", "Map", "null", "true",
+        "false", "result", "value", "index", "count", "file", "commit", "branch", "=", "+",
+        "(", ")", "{", "}", ";", "//", "the", "a", "of", "to", "and",
+    };
+
+    /* Runs ARGS on CONTAINER and returns the resulting container. */
+    static Container command(Container container, String... args) {
+        return new Command(args).execute(container);
+    }
+}
@@ -0,0 +1,251 @@
+package gitlet;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/* JMH benchmarks of the core operations on generated repositories of
+   several shapes.
+
+   Usage:
+       cd benchmarks/jmh && mvn -B package
+       mkdir /tmp/gitlet-jmh && cd /tmp/gitlet-jmh
+       java -jar PROJECT/benchmarks/jmh/target/benchmarks.jar [JMH OPTIONS]
+
+   The benchmarks are
+
+       sha1        Utils.sha1 of a 1MB array
+       ancestor    Container.ancestor of the heads of two branches
+       isAncestor  Container.isAncestor of the head of master and the
+                   initial commit
+       commit      add and commit of one changed file
+       checkout    checkout of a branch, alternating between two
+       merge       merge of a branch with one change on either side
+       find        find of a commit message
+       load        loading the container, as Main does
+       save        saving the container, as Main does
+
+   each with the parameter "shape", FILESxCOMMITSxBRANCHES (by default
+   100x100x2 and 1000x1000x8; -p shape=... picks others). Every benchmark
+   and shape runs in a JVM of its own, which builds the repository with
+   RepoGenerator in its working directory: FILES text files of about 1KB,
+   and COMMITS commits made round-robin on BRANCHES branches, without
+   merges. The repository location is fixed when Command is loaded, so the
+   directory the jar is run from must be empty; each fork removes what it
+   built before the next starts.
+
+   Command output is discarded, and every result is returned or given to
+   a Blackhole so that none of the work can be optimized away. commit and
+   merge move master back to the commit it was generated at before each
+   call, untimed, so every call sees the same history. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(1)
+public class CoreBenchmark {
+
+    /* The repository of one fork. */
+    @State(Scope.Benchmark)
+    public static class Repo {
+        @Param({"100x100x2", "1000x1000x8"})
+        public String shape;
+
+        final RepoGenerator repo = new RepoGenerator();
+        Journal journal;
+        final Random random = new Random(42);
+        final byte[] block = new byte[1 << 20];
+
+        /* The head of master as generated, and a branch other than master. */
+        String base;
+        String other;
+
+        /* Counter making messages and branch names unique. */
+        int serial;
+
+        @Setup(Level.Trial)
+        public void generate() {
+            File dir = new File(System.getProperty("user.dir"));
+            String[] entries = dir.list();
+            if (entries == null || entries.length > 0) {
+                throw new IllegalStateException("Run the benchmarks from an empty directory, not "
+                                                + dir);
+            }
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            random.nextBytes(block);
+            String[] size = shape.split("x");
+            repo.files = Integer.parseInt(size[0]);
+            repo.commits = Integer.parseInt(size[1]);
+            repo.branches = Integer.parseInt(size[2]);
+            repo.mergeEvery = 0;
+            repo.size = 1024;
+            repo.add = 0;
+            repo.generate();
+            repo.save();
+            journal = Journal.open();
+            base = repo.container.getCurrPointer().id;
+            other = "master";
+            for (String name : repo.container.getBranches()) {
+                if (!name.equals("master")) {
+                    other = name;
+                    break;
+                }
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void clean() {
+            File[] entries = new File(System.getProperty("user.dir")).listFiles();
+            if (entries != null) {
+                for (File entry : entries) {
+                    delete(entry);
+                }
+            }
+        }
+
+        /* Runs ARGS on the repository and returns the resulting container. */
+        Container command(String... args) {
+            repo.container = RepoGenerator.command(repo.container, args);
+            return repo.container;
+        }
+
+        /* Checks out master and moves it back to the commit it was
+           generated at. */
+        void restore() {
+            repo.checkout("master");
+            command("reset", base);
+        }
+
+        /* Changes file I alone and commits it. */
+        void change(int i) {
+            repo.edit(i);
+            command("commit", "change " + serial++);
+        }
+    }
+
+    /* A file changed in the working directory, ready to be committed. */
+    @State(Scope.Thread)
+    public static class Changed {
+        String path;
+
+        @Setup(Level.Invocation)
+        public void change(Repo r) {
+            r.restore();
+            int file = r.random.nextInt(r.repo.count());
+            r.repo.rewrite(file);
+            path = r.repo.path(file);
+        }
+    }
+
+    /* A branch with one change, and one other change on master. The two
+       sides change different files, so the merge is clean. */
+    @State(Scope.Thread)
+    public static class Diverged {
+        String branch;
+
+        @Setup(Level.Invocation)
+        public void diverge(Repo r) {
+            r.restore();
+            if (branch != null) {
+                r.command("rm-branch", branch);
+            }
+            int file = r.random.nextInt(r.repo.count());
+            r.change(file);
+            branch = "m" + r.serial;
+            r.command("branch", branch);
+            r.change(file);
+            r.repo.checkout(branch);
+            r.change((file + 1) % r.repo.count());
+            r.repo.checkout("master");
+        }
+    }
+
+    /* One change to the container for save to record. */
+    @State(Scope.Thread)
+    public static class Unsaved {
+        @Setup(Level.Invocation)
+        public void touch(Repo r) {
+            if (!r.repo.container.untracked.remove("save-benchmark")) {
+                r.repo.container.untracked.add("save-benchmark");
+            }
+        }
+    }
+
+    @Benchmark
+    public String sha1(Repo r) {
+        return Utils.sha1((Object) r.block);
+    }
+
+    @Benchmark
+    public Commit ancestor(Repo r) {
+        return r.repo.container.ancestor(r.repo.container.getCurrPointer(),
+                                         r.repo.container.branchHead(r.other));
+    }
+
+    @Benchmark
+    public boolean isAncestor(Repo r) {
+        return r.repo.container.isAncestor(r.repo.container.getCurrPointer(),
+                                           r.repo.container.firstCommit());
+    }
+
+    @Benchmark
+    public void commit(Repo r, Changed changed, Blackhole sink) {
+        sink.consume(r.command("add", changed.path));
+        sink.consume(r.command("commit", "commit " + r.serial++));
+    }
+
+    @Benchmark
+    public Container checkout(Repo r) {
+        return r.command("checkout", r.repo.container.currBranch.equals("master")
+                         ? r.other : "master");
+    }
+
+    @Benchmark
+    public Container merge(Repo r, Diverged diverged) {
+        return r.command("merge", diverged.branch);
+    }
+
+    @Benchmark
+    public Container find(Repo r) {
+        return r.command("find", "initial files");
+    }
+
+    @Benchmark
+    public Container load() {
+        return Journal.open().container();
+    }
+
+    @Benchmark
+    public void save(Repo r, Unsaved unsaved, Blackhole sink) {
+        r.journal.save(r.repo.container);
+        r.repo.container.index().save();
+        sink.consume(r.journal);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
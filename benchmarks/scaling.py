@@ -0,0 +1,292 @@
+import sys, json, csv, time, platform, statistics
+from subprocess import run, PIPE, DEVNULL, CalledProcessError
+from os.path import abspath, dirname, exists, join
+from getopt import getopt, GetoptError
+from os import walk
+from shutil import rmtree
+from tempfile import mkdtemp
+from datetime import datetime, timezone
+import random
+
+SHORT_USAGE = """\
+Usage: python3 benchmarks/scaling.py OPTIONS [REPO ...]
+
+   OPTIONS may include
+       --classes=DIR  Directory holding the compiled gitlet and benchmark
+                      classes (default out/bench).
+       --runs=N       Times to run each command (default 5).
+       --format=FMT   csv or json (default csv).
+       --output=FILE  Append the results to FILE rather than print them.
+       --label=NAME   Version label recorded with each result (default the
+                      short id of the git HEAD, if there is one).
+       --keep         Keep the generated repositories.
+"""
+
+USAGE = SHORT_USAGE + """\
+
+Times whole gitlet commands, each in its own JVM as a user runs them,
+against repositories built by RepoGenerator. Each REPO is small, medium
+or large (below), or a space-separated list of RepoGenerator options
+without their leading dashes, such as "commits=1000 files=200 branches=4";
+without any REPO, all three presets are used. Build the classes first with
+
+    javac -d out/bench benchmarks/gitlet/*.java gitlet/*.java
+
+For each repository, generation is timed once, and then each of these
+commands is run --runs times:
+
+   status       gitlet status
+   log          gitlet log
+   global-log   gitlet global-log
+   find         gitlet find "initial files"
+   checkout     gitlet checkout of a branch, alternating between two
+   add          gitlet add of one changed file
+   commit       gitlet commit of that file
+   diff         gitlet diff of a changed working file against the head,
+                which is then checked out again
+   merge        gitlet merge of a branch with one new commit on either
+                side; making the branch is not timed
+   repack       gitlet repack
+   log-packed   gitlet log after the repack
+   gc           gitlet gc
+
+Each result row holds the label, time, repository, command, number of
+runs and the minimum, median, mean and maximum wall-clock milliseconds.
+With --format=csv, a header is written only when starting a new file, so
+one file collects the results of many versions for comparison over time.
+With --format=json, one JSON object per line is written for each
+invocation, holding the label, time, Java version and the rows.
+"""
+
+REPOS = {
+    "small": "commits=100 files=50 branches=2",
+    "medium": "commits=1000 files=500 branches=4",
+    "large": "commits=5000 files=2000 branches=8 binary=5",
+}
+
+FIELDS = ["label", "time", "repo", "command", "runs",
+          "min_ms", "median_ms", "mean_ms", "max_ms"]
+
+def Usage():
+    print(SHORT_USAGE, file=sys.stderr)
+    sys.exit(1)
+
+def gitlet(classes, repo, *args):
+    """Run gitlet.Main with ARGS in REPO and return the elapsed seconds."""
+    start = time.perf_counter()
+    run(["java", "-cp", classes, "gitlet.Main"] + list(args), cwd=repo,
+        stdout=DEVNULL, stderr=DEVNULL, check=True)
+    return time.perf_counter() - start
+
+def tracked_text(repo):
+    """Return the relative paths of the text files in REPO."""
+    result = []
+    for root, dirs, files in walk(repo):
+        dirs[:] = [d for d in dirs if d != ".gitlet"]
+        for name in files:
+            if name.endswith(".txt"):
+                result.append(join(root, name)[len(repo) + 1:])
+    return sorted(result)
+
+def touch(repo, path, serial):
+    """Append a line to the file PATH in REPO."""
+    with open(join(repo, path), "a") as f:
+        f.write("scaling run %d\n" % serial)
+
+def branches(classes, repo):
+    """Return the branches of REPO."""
+    out = run(["java", "-cp", classes, "gitlet.Main", "status"], cwd=repo,
+              stdout=PIPE, check=True, universal_newlines=True).stdout
+    section = out.split("=== Branches ===")[1].split("===")[0]
+    return [b.strip().lstrip("*") for b in section.split("\n") if b.strip()]
+
+class Timer:
+    """The commands to time on one repository."""
+
+    def __init__(self, classes, repo):
+        self.classes = classes
+        self.repo = repo
+        self.files = tracked_text(repo)
+        self.rand = random.Random(7)
+        self.serial = 0
+        others = [b for b in branches(classes, repo) if b != "master"]
+        self.other = others[0] if others else None
+        self.path = None
+
+    def call(self, *args):
+        return gitlet(self.classes, self.repo, *args)
+
+    def change(self, path):
+        self.serial += 1
+        touch(self.repo, path, self.serial)
+        self.call("add", path)
+        self.call("commit", "scaling change %d" % self.serial)
+
+    def status(self):
+        return self.call("status")
+
+    def log(self):
+        return self.call("log")
+
+    def global_log(self):
+        return self.call("global-log")
+
+    def find(self):
+        return self.call("find", "initial files")
+
+    def checkout(self):
+        if self.other is None:
+            return None
+        elapsed = self.call("checkout", self.other)
+        self.call("checkout", "master")
+        return elapsed
+
+    def add(self):
+        self.serial += 1
+        self.path = self.rand.choice(self.files)
+        touch(self.repo, self.path, self.serial)
+        return self.call("add", self.path)
+
+    def commit(self):
+        if self.path is None:
+            self.add()
+        elapsed = self.call("commit", "scaling commit %d" % self.serial)
+        self.path = None
+        return elapsed
+
+    def diff(self):
+        self.serial += 1
+        path = self.rand.choice(self.files)
+        touch(self.repo, path, self.serial)
+        elapsed = self.call("diff")
+        self.call("checkout", "--", path)
+        return elapsed
+
+    def merge(self):
+        a, b = self.rand.sample(self.files, 2)
+        self.change(a)
+        branch = "scaling-%d" % self.serial
+        self.call("branch", branch)
+        self.change(a)
+        self.call("checkout", branch)
+        self.change(b)
+        self.call("checkout", "master")
+        return self.call("merge", branch)
+
+    def repack(self):
+        return self.call("repack")
+
+    def log_packed(self):
+        return self.call("log")
+
+    def gc(self):
+        return self.call("gc")
+
+COMMANDS = ["status", "log", "global-log", "find", "checkout", "add",
+            "commit", "diff", "merge", "repack", "log-packed", "gc"]
+
+def row(label, now, repo, command, times):
+    ms = [t * 1000 for t in times]
+    return {"label": label, "time": now, "repo": repo, "command": command,
+            "runs": len(ms), "min_ms": round(min(ms), 1),
+            "median_ms": round(statistics.median(ms), 1),
+            "mean_ms": round(statistics.mean(ms), 1),
+            "max_ms": round(max(ms), 1)}
+
+def measure(classes, spec, runs, label, now, keep):
+    """Generate the repository SPEC and return the result rows for it."""
+    repo = mkdtemp(prefix="gitlet-scaling-")
+    try:
+        start = time.perf_counter()
+        run(["java", "-cp", classes, "gitlet.RepoGenerator"]
+            + ["--" + option for option in spec.split()],
+            cwd=repo, stdout=DEVNULL, check=True)
+        rows = [row(label, now, spec, "generate", [time.perf_counter() - start])]
+        timer = Timer(classes, repo)
+        for command in COMMANDS:
+            method = getattr(timer, command.replace("-", "_"))
+            times = [t for t in (method() for _ in range(runs)) if t is not None]
+            if not times:
+                continue
+            rows.append(row(label, now, spec, command, times))
+            print("%-40s %-11s %8.1f ms" % (spec[:40], command,
+                                            rows[-1]["median_ms"]),
+                  file=sys.stderr)
+        return rows
+    finally:
+        if keep:
+            print("Kept %s in %s" % (spec, repo), file=sys.stderr)
+        else:
+            rmtree(repo, ignore_errors=True)
+
+def git_label():
+    try:
+        return run(["git", "rev-parse", "--short", "HEAD"], stdout=PIPE,
+                   stderr=DEVNULL, check=True, cwd=dirname(abspath(__file__)),
+                   universal_newlines=True).stdout.strip()
+    except (CalledProcessError, OSError):
+        return "unknown"
+
+def write(rows, fmt, output, label, now):
+    out = sys.stdout if output is None else open(output, "a", newline="")
+    try:
+        if fmt == "csv":
+            writer = csv.DictWriter(out, FIELDS)
+            if output is None or out.tell() == 0:
+                writer.writeheader()
+            writer.writerows(rows)
+        else:
+            java = run(["java", "-version"], stdout=PIPE, stderr=PIPE,
+                       universal_newlines=True).stderr.split("\n")[0]
+            json.dump({"label": label, "time": now, "java": java,
+                       "os": platform.platform(), "results": rows}, out)
+            out.write("\n")
+    finally:
+        if output is not None:
+            out.close()
+
+if __name__ == "__main__":
+    try:
+        opts, args = getopt(sys.argv[1:], '',
+                            ['classes=', 'runs=', 'format=', 'output=',
+                             'label=', 'keep', 'help'])
+    except GetoptError:
+        Usage()
+
+    classes = "out/bench"
+    runs = 5
+    fmt = "csv"
+    output = None
+    label = None
+    keep = False
+    for opt, val in opts:
+        if opt == '--classes':
+            classes = val
+        elif opt == '--runs':
+            runs = int(val)
+        elif opt == '--format':
+            fmt = val
+        elif opt == '--output':
+            output = val
+        elif opt == '--label':
+            label = val
+        elif opt == '--keep':
+            keep = True
+        elif opt == '--help':
+            print(USAGE)
+            sys.exit(0)
+    if fmt not in ("csv", "json") or runs < 1:
+        Usage()
+    classes = abspath(classes)
+    if not exists(join(classes, "gitlet", "RepoGenerator.class")):
+        print("No compiled classes in %s; see --help." % classes,
+              file=sys.stderr)
+        sys.exit(1)
+    if label is None:
+        label = git_label()
+    now = datetime.now(timezone.utc).strftime("%Y-%m-%dT%H:%M:%SZ")
+
+    rows = []
+    for spec in args or [REPOS[name] for name in ("small", "medium", "large")]:
+        rows += measure(classes, REPOS.get(spec, spec), runs, label, now, keep)
+    write(rows, fmt, output, label, now)
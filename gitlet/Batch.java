@@ -0,0 +1,196 @@
+package gitlet;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/* Script mode: "gitlet batch [FILE]" runs the commands in FILE, or on the
+   standard input if FILE is missing or "-", one per line, against a
+   single loaded container, and saves once at the end.
+
+   Each line is split into words at white space; single or double quotes
+   group words, as in "commit 'a message'", and a backslash escapes the
+   next character. Blank lines and lines starting with # are skipped.
+   The line "checkpoint" saves everything done so far.
+
+   A command that fails prints its message as it would when run alone,
+   and the script goes on. That covers the errors gitlet only reports,
+   such as "No changes added to the commit." (Command.failure), as well
+   as those thrown as an IllegalArgumentException, whose changes to the
+   refs and staging area are also undone. Each failure is reported on the
+   standard error with its line number, and the process exits with status
+   1 if there were any. A script refused because the repository is locked
+   runs nothing and exits with status 1. */
+class Batch {
+
+    /* The line that saves the state so far. */
+    static final String CHECKPOINT = "checkpoint";
+
+    /* Runs the script named by ARGS ("batch [FILE]") and returns the exit
+       status. */
+    static int run(String... args) {
+        if (args.length > 2) {
+            throw new IllegalArgumentException("Incorrect operands.");
+        }
+        boolean stdin = args.length == 1 || args[1].equals("-");
+        try (FileChannel lock = Daemon.lock(false);
+             InputStream input = stdin ? System.in : new FileInputStream(args[1])) {
+            if (lock == null && Command.GITLETDIR.isDirectory()) {
+                System.out.println("The repository is locked; stop the gitlet daemon first.");
+                return 1;
+            }
+            BufferedReader lines = new BufferedReader(
+                new InputStreamReader(input, StandardCharsets.UTF_8));
+            return run(lines);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /* Runs the commands read from LINES and returns the exit status. */
+    private static int run(BufferedReader lines) throws IOException {
+        Journal journal;
+        Trace.Phase phase = Trace.phase("load");
+        try {
+            journal = Journal.open();
+        } finally {
+            phase.close();
+        }
+        Container container = journal.container();
+        int failures = 0;
+        int number = 0;
+        for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+            number += 1;
+            List<String> words;
+            try {
+                words = words(line);
+            } catch (IllegalArgumentException excp) {
+                failures += 1;
+                report(number, excp.getMessage());
+                continue;
+            }
+            if (words.isEmpty() || words.get(0).startsWith("#")) {
+                continue;
+            }
+            if (words.size() == 1 && words.get(0).equals(CHECKPOINT)) {
+                save(journal, container);
+                continue;
+            }
+            Saved saved = container == null ? null : new Saved(container);
+            phase = Trace.phase("execute");
+            try {
+                Command command = new Command(words.toArray(new String[0]));
+                try {
+                    container = command.execute(container);
+                } finally {
+                    phase.close();
+                }
+                if (command.failure() != null) {
+                    failures += 1;
+                    report(number, command.failure());
+                }
+            } catch (IllegalArgumentException excp) {
+                System.out.println(excp.getMessage());
+                if (saved != null) {
+                    saved.restore(container);
+                }
+                failures += 1;
+                report(number, excp.getMessage());
+            }
+        }
+        save(journal, container);
+        return failures == 0 ? 0 : 1;
+    }
+
+    /* Reports on the standard error that line NUMBER failed with MESSAGE. */
+    private static void report(int number, String message) {
+        System.out.flush();
+        System.err.println("gitlet: line " + number + ": " + message);
+    }
+
+    private static void save(Journal journal, Container container) {
+        if (container != null) {
+            Trace.Phase phase = Trace.phase("save");
+            try {
+                journal.save(container);
+                container.index().save();
+            } finally {
+                phase.close();
+            }
+        }
+    }
+
+    /* Returns the words of LINE, with quotes and escapes removed. */
+    static List<String> words(String line) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = null;
+        char quote = 0;
+        for (int i = 0; i < line.length(); i += 1) {
+            char c = line.charAt(i);
+            if (c == '\\' && i + 1 < line.length()) {
+                i += 1;
+                c = line.charAt(i);
+            } else if (quote != 0 && c == quote) {
+                quote = 0;
+                continue;
+            } else if (quote == 0 && (c == '"' || c == '\'')) {
+                quote = c;
+                if (word == null) {
+                    word = new StringBuilder();
+                }
+                continue;
+            } else if (quote == 0 && Character.isWhitespace(c)) {
+                if (word != null) {
+                    words.add(word.toString());
+                    word = null;
+                }
+                continue;
+            }
+            if (word == null) {
+                word = new StringBuilder();
+            }
+            word.append(c);
+        }
+        if (quote != 0) {
+            throw new IllegalArgumentException("Unterminated quote: " + line);
+        }
+        if (word != null) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+
+    /* The refs and staging state of a container, kept so that a failed
+       command's changes can be undone. */
+    private static class Saved {
+        private final Commit currCommit;
+        private final String currBranch;
+        private final HashMap<String, String> branchMap;
+        private final HashMap<String, String> stagingArea;
+        private final HashSet<String> untracked;
+
+        Saved(Container container) {
+            currCommit = container.currCommit;
+            currBranch = container.currBranch;
+            branchMap = new HashMap<>(container.branchMap);
+            stagingArea = new HashMap<>(container.stagingArea);
+            untracked = new HashSet<>(container.untracked);
+        }
+
+        void restore(Container container) {
+            container.currCommit = currCommit;
+            container.currBranch = currBranch;
+            container.branchMap = branchMap;
+            container.stagingArea = stagingArea;
+            container.untracked = untracked;
+        }
+    }
+}
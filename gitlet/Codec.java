@@ -0,0 +1,362 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/* Compact binary encoding of commits, trees and containers.
+
+   Every encoded record starts with the magic bytes "GL", a kind byte, and
+   a major and minor format version. Next comes a string table holding each
+   distinct string (file names, branch names, messages) once, after which
+   every string is written as its index in the table. The rest of the
+   record is a sequence of fields, each a varint tag, a varint length and
+   that many bytes of payload. SHA-1 ids are stored as 20 raw bytes.
+
+   Readers skip fields whose tags they do not know, so a newer minor version
+   can add fields without breaking older readers; a change to the major
+   version means older readers must refuse the record. Tree ids leave the
+   version bytes out (see treeId). Records written by ObjectOutputStream
+   (which start with 0xACED) are still read, so existing repositories keep
+   working. */
+class Codec {
+
+    /* Major format version; readers refuse records with a larger one. */
+    static final int MAJOR = 1;
+    /* Minor format version; bumped when fields are added. */
+    static final int MINOR = 1;
+
+    /* Record kinds. */
+    static final byte COMMIT = 'C';
+    static final byte CONTAINER = 'R';
+    static final byte TREE = 'T';
+
+    /* Commit field tags. */
+    private static final int COMMIT_ID = 1;
+    private static final int COMMIT_MESSAGE = 2;
+    private static final int COMMIT_TIME = 3;
+    private static final int COMMIT_PARENT = 4;
+    private static final int COMMIT_FILES = 5;
+    private static final int COMMIT_TREE = 6;
+
+    /* Tree field tags. */
+    private static final int TREE_BLOBS = 1;
+    private static final int TREE_TREES = 2;
+
+    /* Container field tags. */
+    private static final int CONTAINER_BRANCH = 1;
+    private static final int CONTAINER_BRANCHES = 2;
+    private static final int CONTAINER_STAGED = 3;
+    private static final int CONTAINER_REMOVED = 4;
+    private static final int CONTAINER_FIRST = 5;
+
+    /* Returns the encoding of COMMIT. */
+    static byte[] encodeCommit(Commit commit) {
+        Writer w = new Writer(COMMIT);
+        w.idField(COMMIT_ID, commit.id);
+        w.stringField(COMMIT_MESSAGE, commit.message);
+        w.stringField(COMMIT_TIME, commit.timeStamp);
+        if (commit.parentId != null) {
+            w.idField(COMMIT_PARENT, commit.parentId);
+        }
+        /* Commits made before trees list their files instead. */
+        if (commit.treeId != null) {
+            w.idField(COMMIT_TREE, commit.treeId);
+        } else {
+            w.idMapField(COMMIT_FILES, commit.filesMap);
+        }
+        return w.finish();
+    }
+
+    /* Returns the commit encoded in BYTES. */
+    static Commit decodeCommit(byte[] bytes) {
+        if (isJavaSerialized(bytes)) {
+            return Utils.deserialize(bytes, Commit.class);
+        }
+        Reader r = new Reader(bytes, COMMIT);
+        String id = null, message = null, timeStamp = null, parentId = null, treeId = null;
+        HashMap<String, String> filesMap = null;
+        while (r.hasField()) {
+            int tag = r.tag();
+            switch (tag) {
+                case COMMIT_ID: id = r.id(); break;
+                case COMMIT_MESSAGE: message = r.string(); break;
+                case COMMIT_TIME: timeStamp = r.string(); break;
+                case COMMIT_PARENT: parentId = r.id(); break;
+                case COMMIT_FILES: filesMap = r.idMap(); break;
+                case COMMIT_TREE: treeId = r.id(); break;
+                default: r.skip();
+            }
+        }
+        Commit commit = treeId != null
+            ? new Commit(message, timeStamp, null, treeId, id)
+            : new Commit(message, timeStamp, null,
+                         filesMap == null ? new HashMap<>() : filesMap, id);
+        commit.parentId = parentId;
+        return commit;
+    }
+
+    /* Returns the encoding of TREE. Entries are written in name order, so
+       equal trees have equal encodings. */
+    static byte[] encodeTree(Tree tree) {
+        Writer w = new Writer(TREE);
+        w.idMapField(TREE_BLOBS, tree.blobs);
+        w.idMapField(TREE_TREES, tree.trees);
+        return w.finish();
+    }
+
+    /* Returns the id of the tree encoded in BYTES: the SHA-1 of the record
+       without its two version bytes. A tree's id names its contents, and
+       must not change when the format version alone does, or the next
+       commit after an upgrade would store every tree on its paths again
+       under a new id. */
+    static String treeId(byte[] bytes) {
+        return Utils.sha1(Arrays.copyOfRange(bytes, 0, 3),
+                          Arrays.copyOfRange(bytes, 5, bytes.length));
+    }
+
+    /* Returns the tree encoded in BYTES. */
+    static Tree decodeTree(byte[] bytes) {
+        Reader r = new Reader(bytes, TREE);
+        TreeMap<String, String> blobs = new TreeMap<>(), trees = new TreeMap<>();
+        while (r.hasField()) {
+            switch (r.tag()) {
+                case TREE_BLOBS: blobs.putAll(r.idMap()); break;
+                case TREE_TREES: trees.putAll(r.idMap()); break;
+                default: r.skip();
+            }
+        }
+        return new Tree(blobs, trees);
+    }
+
+    /* Returns the encoding of CONTAINER. */
+    static byte[] encodeContainer(Container container) {
+        Writer w = new Writer(CONTAINER);
+        w.stringField(CONTAINER_BRANCH, container.currBranch);
+        w.idMapField(CONTAINER_BRANCHES, container.branchMap);
+        w.idMapField(CONTAINER_STAGED, container.stagingArea);
+        w.stringsField(CONTAINER_REMOVED, container.untracked);
+        w.idField(CONTAINER_FIRST, container.firstCommitId);
+        return w.finish();
+    }
+
+    /* Returns the container encoded in BYTES, with its current commit loaded. */
+    static Container decodeContainer(byte[] bytes) {
+        if (isJavaSerialized(bytes)) {
+            return Utils.deserialize(bytes, Container.class);
+        }
+        Reader r = new Reader(bytes, CONTAINER);
+        Container container = new Container();
+        while (r.hasField()) {
+            switch (r.tag()) {
+                case CONTAINER_BRANCH: container.currBranch = r.string(); break;
+                case CONTAINER_BRANCHES: container.branchMap = r.idMap(); break;
+                case CONTAINER_STAGED: container.stagingArea = r.idMap(); break;
+                case CONTAINER_REMOVED: container.untracked = new HashSet<>(r.strings()); break;
+                case CONTAINER_FIRST: container.firstCommitId = r.id(); break;
+                default: r.skip();
+            }
+        }
+        container.currCommit = Commit.load(container.branchMap.get(container.currBranch));
+        return container;
+    }
+
+    /* Returns true iff BYTES were written by ObjectOutputStream. */
+    private static boolean isJavaSerialized(byte[] bytes) {
+        return bytes.length >= 2 && (bytes[0] & 0xff) == 0xac && (bytes[1] & 0xff) == 0xed;
+    }
+
+    /* Builds one record: collects the string table while fields are written,
+       then emits header, table and fields in order. */
+    private static class Writer {
+        private final byte kind;
+        private final HashMap<String, Integer> strings = new HashMap<>();
+        private final List<String> table = new ArrayList<>();
+        private final ByteArrayOutputStream fields = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream field = new ByteArrayOutputStream();
+
+        Writer(byte kind) {
+            this.kind = kind;
+        }
+
+        void stringField(int tag, String value) {
+            if (value != null) {
+                stringRef(field, value);
+                endField(tag);
+            }
+        }
+
+        void idField(int tag, String id) {
+            if (id != null) {
+                field.write(Utils.fromHex(id), 0, 20);
+                endField(tag);
+            }
+        }
+
+        /* A map from strings to ids: a count, then (name, id) pairs. */
+        void idMapField(int tag, Map<String, String> map) {
+            if (map != null) {
+                varint(field, map.size());
+                for (Map.Entry<String, String> entry : map.entrySet()) {
+                    stringRef(field, entry.getKey());
+                    field.write(Utils.fromHex(entry.getValue()), 0, 20);
+                }
+                endField(tag);
+            }
+        }
+
+        /* A collection of strings: a count, then the strings. */
+        void stringsField(int tag, Iterable<String> values) {
+            if (values != null) {
+                List<String> all = new ArrayList<>();
+                values.forEach(all::add);
+                varint(field, all.size());
+                for (String value : all) {
+                    stringRef(field, value);
+                }
+                endField(tag);
+            }
+        }
+
+        byte[] finish() {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(fields.size() + 64);
+            out.write('G');
+            out.write('L');
+            out.write(kind);
+            out.write(MAJOR);
+            out.write(MINOR);
+            varint(out, table.size());
+            for (String s : table) {
+                byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+                varint(out, utf8.length);
+                out.write(utf8, 0, utf8.length);
+            }
+            byte[] body = fields.toByteArray();
+            out.write(body, 0, body.length);
+            return out.toByteArray();
+        }
+
+        private void stringRef(ByteArrayOutputStream out, String s) {
+            Integer index = strings.get(s);
+            if (index == null) {
+                index = table.size();
+                strings.put(s, index);
+                table.add(s);
+            }
+            varint(out, index);
+        }
+
+        private void endField(int tag) {
+            varint(fields, tag);
+            varint(fields, field.size());
+            byte[] payload = field.toByteArray();
+            fields.write(payload, 0, payload.length);
+            field.reset();
+        }
+
+        private static void varint(ByteArrayOutputStream out, int value) {
+            while ((value & ~0x7f) != 0) {
+                out.write((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            out.write(value);
+        }
+    }
+
+    /* Reads back one record written by Writer. */
+    private static class Reader {
+        private final byte[] buf;
+        private int pos;
+        private final String[] table;
+        /* End of the payload of the field being read. */
+        private int fieldEnd;
+
+        Reader(byte[] buf, byte kind) {
+            this.buf = buf;
+            if (buf.length < 5 || buf[0] != 'G' || buf[1] != 'L' || buf[2] != kind) {
+                throw new IllegalArgumentException("corrupt gitlet record");
+            }
+            if (buf[3] > MAJOR) {
+                throw new IllegalArgumentException(
+                    "record written by a newer version of gitlet (format " + buf[3] + ")");
+            }
+            pos = 5;
+            table = new String[varint()];
+            for (int i = 0; i < table.length; i += 1) {
+                int length = varint();
+                table[i] = new String(buf, pos, length, StandardCharsets.UTF_8);
+                pos += length;
+            }
+        }
+
+        boolean hasField() {
+            return pos < buf.length;
+        }
+
+        /* Reads the next field header and returns its tag. */
+        int tag() {
+            int tag = varint();
+            int length = varint();
+            fieldEnd = pos + length;
+            if (fieldEnd > buf.length) {
+                throw new IllegalArgumentException("corrupt gitlet record");
+            }
+            return tag;
+        }
+
+        void skip() {
+            pos = fieldEnd;
+        }
+
+        String string() {
+            return table[varint()];
+        }
+
+        String id() {
+            String id = Utils.toHex(buf, pos, 20);
+            pos += 20;
+            return id;
+        }
+
+        HashMap<String, String> idMap() {
+            int size = varint();
+            HashMap<String, String> map = new HashMap<>(size * 4 / 3 + 1);
+            for (int i = 0; i < size; i += 1) {
+                String key = string();
+                map.put(key, id());
+            }
+            pos = fieldEnd;
+            return map;
+        }
+
+        List<String> strings() {
+            int size = varint();
+            List<String> result = new ArrayList<>(size);
+            for (int i = 0; i < size; i += 1) {
+                result.add(string());
+            }
+            pos = fieldEnd;
+            return result;
+        }
+
+        private int varint() {
+            int result = 0;
+            for (int shift = 0; ; shift += 7) {
+                if (pos >= buf.length) {
+                    throw new IllegalArgumentException("corrupt gitlet record");
+                }
+                byte b = buf[pos++];
+                result |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+        }
+    }
+}
@@ -2,12 +2,16 @@ package gitlet;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Set;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.TreeSet;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.Collections;
@@ -24,8 +28,11 @@ public class Command {
     public static final File GITLETDIR = new File(new File(System.getProperty("user.dir")), ".gitlet");
     /* Where the container lives. */
     public static File containerDir = new File(GITLETDIR, "container");
-    /* A file that stores blobs in the staging area. */
-    public static File saDir = new File(GITLETDIR, "sa");
+    /* Whether to report extra details, such as how many files a checkout wrote (-Dgitlet.verbose=true). */
+    static final boolean VERBOSE = Boolean.getBoolean("gitlet.verbose");
+
+    /* The first error this command reported, or null if it succeeded. */
+    private String failure;
 
     /* Command constructor, takes in arguments (terminal input) and split command & parameter. */
     public Command(String... args) {
@@ -35,48 +42,90 @@ public class Command {
         else argument = null;
     }
 
+    /** Returns the first error this command reported, such as "No such branch exists.", or null
+     * if it succeeded. Errors are printed as they happen, and do not throw. */
+    public String failure() {
+        return failure;
+    }
+
+    /* Prints the error MESSAGE, as gitlet reports errors, and records that this command failed. */
+    private void fail(String message) {
+        System.out.println(message);
+        if (failure == null) failure = message;
+    }
+
     public Container execute(Container container) {
         switch (command) {
             case "init":
                 if (argument != null) throw new IllegalArgumentException();
                 container = init(container);
+                break;
             case "add":
                 if (argument == null) throw new IllegalArgumentException();
                 add(container);
+                break;
             case "commit":
                 if (argument == null || (argument.length != 1) || argument[0].equals(""))
                     throw new IllegalArgumentException("Please enter a commit message.");
                 commit(container);
+                break;
             case "rm":
                 if (argument == null) throw new IllegalArgumentException();
                 remove(container);
+                break;
             case "log":
-                if (argument != null) throw new IllegalArgumentException();
                 log(container);
+                break;
             case "global-log":
-                if (argument != null) throw new IllegalArgumentException();
                 globallog(container);
+                break;
             case "find":
-                if (argument == null || argument.length != 1) throw new IllegalArgumentException();
+                if (argument == null || argument.length > 2
+                    || (argument.length == 2 && !argument[0].equals("--contains")))
+                    throw new IllegalArgumentException("Incorrect operands.");
                 find(container);
+                break;
             case "status":
                 if (argument != null) throw new IllegalArgumentException();
                 status(container);
+                break;
             case "checkout":
                 if (argument == null || argument.length > 3) throw new IllegalArgumentException();
                 checkout(container);
+                break;
             case "branch":
                 if (argument == null || argument.length != 1) throw new IllegalArgumentException();
                 branch(container);
+                break;
             case "rm-branch":
                 if (argument == null || argument.length != 1) throw new IllegalArgumentException();
                 rmbranch(container);
+                break;
             case "reset":
                 if (argument == null) throw new IllegalArgumentException();
                 reset(container);
+                break;
             case "merge":
                 if (argument == null || argument.length != 1) throw new IllegalArgumentException();
                 merge(container);
+                break;
+            case "diff":
+                if (argument != null && argument.length > 2)
+                    throw new IllegalArgumentException("Incorrect operands.");
+                diff(container);
+                break;
+            case "gc":
+                gc(container);
+                break;
+            case "repack":
+                repack(container);
+                break;
+            case "count-objects":
+                countObjects(container);
+                break;
+            case "stats":
+                stats(container);
+                break;
         }
         return container;
     }
@@ -84,15 +133,17 @@ public class Command {
     /* Creates a container object*/
     public Container init(Container container) {
         if (Command.GITLETDIR.exists()) {
-            System.out.println("A gitlet version-control system already exists in the current directory");
+            fail("A gitlet version-control system already exists in the current directory");
         } else {
             /* Create the .gitlet directory */
-            saDir.mkdirs();
+            ObjectStore.BLOBS.root().mkdirs();
             String currentTime = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date());
             String id = Utils.sha1("initial commit", currentTime);
             Commit initialCommit = new Commit("initial commit", currentTime, null, new HashMap<>(), id);
+            initialCommit.save();
             container = new Container(initialCommit);
-            container.commitMap.put(id, initialCommit);
+            container.graph().position(initialCommit);
+            container.messages().update();
         }
         return container;
     }
@@ -104,27 +155,29 @@ public class Command {
      * If the file had been marked to be removed (see gitlet rm), delete that mark before adding the file as usual.
      * */
     public void add(Container container) {
-        for (String fileName: argument) {
-            /* Append the file to the staging area directory */
-            File currDir = new File(System.getProperty("user.dir"));
-            File file = new File(currDir, fileName);
-            String id = Utils.sha1(Utils.readContents(file));
-            if (!file.exists()) System.out.println("File does not exist.");
+        File currDir = new File(System.getProperty("user.dir"));
+        Index index = container.index();
+        /* Hash and store each distinct file on the worker pool, unless the index already knows its blob;
+         * identical contents are published to the object store only once. */
+        LinkedHashSet<String> paths = new LinkedHashSet<>();
+        for (String name : argument) paths.add(path(name));
+        List<String> fileNames = new ArrayList<>(paths);
+        List<String> ids = Workers.map(fileNames, fileName -> {
+            if (fileName == null || !new File(currDir, fileName).exists()) return null;
+            return index.store(currDir, fileName, ObjectStore.BLOBS);
+        });
+        /* Report and stage in argument order, once every file is stored, so the result never depends on scheduling. */
+        for (int i = 0; i < fileNames.size(); i += 1) {
+            String fileName = fileNames.get(i);
+            String id = ids.get(i);
+            if (id == null) fail("File does not exist.");
             else {
                 /* If the file is untracked, delete the mark from set untracked. */
                 if (!container.tracking(fileName)) container.retrack(fileName);
                 /* Check if the added version is not identical to the version in current commit*/
                 Commit currCommit = container.currCommit;
                 if (!currCommit.checkFile(fileName) || !currCommit.getFileID(fileName).equals(id)) {
-                    container.stage(file);
-                    byte[] contentByte = Utils.readContents(file);
-                    File saFile = new File(saDir, id);
-                    try {
-                        saFile.createNewFile(); // Access the file in working directory
-                        Utils.writeContents(saFile, contentByte);
-                    } catch (IOException e) {
-                        return;
-                    }
+                    container.stagingArea.put(fileName, id);
                 }
             }
         }
@@ -161,31 +214,27 @@ public class Command {
 
     public void commit(Container container) {
         if (container.stagingArea.isEmpty() && container.untracked.isEmpty()) {
-            System.out.println("No changes added to the commit.");
+            fail("No changes added to the commit.");
             return;
         }
         String currentTime = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date());
         /* Create sha-id based on commit message, timestamp, and the parent id*/
         String id = Utils.sha1(argument[0], currentTime, container.currCommit.id);
         Commit parentCommit = container.currCommit;
-        HashMap<String, String> filesMap = new HashMap();
-        /* Track all files in staging area */
-        for (Map.Entry<String, String> entry : container.stagingArea.entrySet()) {
-            filesMap.put(entry.getKey(), entry.getValue());
-        }
-        for (Map.Entry<String, String> entry : parentCommit.filesMap.entrySet()) {
-            String fileName = entry.getKey(), fileID = entry.getValue();
-            if (!container.untracked.contains(fileName) && container.stagingArea.containsKey(fileName))
-                filesMap.put(fileName, fileID);
-        }
-        Commit currCommit = new Commit(argument[0], currentTime, parentCommit, filesMap, id);
-        container.currCommit = currCommit;
-        container.committed.add(currCommit);
-        container.branchMap.put(container.currBranch, currCommit);
+        /* Staged files replace the parent's versions and removed files are dropped; only the trees
+         * along those paths are rebuilt, the rest are shared with the parent. */
+        Map<String, String> changes = new HashMap<>(container.stagingArea);
+        for (String fileName : container.untracked) {
+            if (!container.stagingArea.containsKey(fileName)) changes.put(fileName, null);
+        }
+        String treeId = Tree.update(parentCommit.treeId(), changes);
+        Commit currCommit = new Commit(argument[0], currentTime, parentCommit, treeId, id);
+        currCommit.save();
+        container.graph().position(currCommit);
+        container.messages().update();
+        container.moveHead(currCommit);
         container.stagingArea = new HashMap();
         container.untracked = new HashSet();
-        container.commitMap.put(currCommit.id, currCommit);
-        for (File file : saDir.listFiles()) file.delete();
     }
 
 //
@@ -253,54 +302,89 @@ public class Command {
      * if it is tracked by the current commit, untrack it and delete the file from repository;
      * if it is staged, unstage it. */
     public void remove(Container container) {
-        for (String fileName: argument) {
-            File currFile = new File(fileName);
-            if (!container.staged(fileName) && !container.currCommit.checkFile(fileName)) {
-                System.out.println("No reason to remove the file.");
+        for (String name: argument) {
+            String fileName = path(name);
+            if (fileName == null || !container.staged(fileName) && !container.currCommit.checkFile(fileName)) {
+                fail("No reason to remove the file.");
+                continue;
             }
-            if (container.staged(fileName)) container.unstage(currFile);
+            if (container.staged(fileName)) container.stagingArea.remove(fileName);
             if (container.currCommit.checkFile(fileName)) {
                 container.untrack(fileName);
-                Utils.restrictedDelete(currFile);
+                deleteWorkingFile(new File(System.getProperty("user.dir")), fileName);
             }
         }
     }
 
     /** Show information each commit backwards along the commit
-     * tree from the current commit to the initial commit. */
+     * tree from the current commit to the initial commit.
+     * log [-n count] [--skip count] shows at most count commits after skipping the
+     * first count; the skip is a jump in the commit graph, so neither costs more than
+     * the commits actually shown. */
     public void log(Container container) {
-        Commit currCommit = container.currCommit;
-        while (!currCommit.equals(container.firstCommit)) {
+        int[] options = historyOptions();
+        CommitGraph graph = container.graph();
+        int pos = graph.position(container.currCommit);
+        int generation = graph.generation(pos) - options[0];
+        if (generation < 1) {
+            return;
+        }
+        pos = graph.ancestorAt(pos, generation);
+        for (int shown = 0; pos >= 0 && shown != options[1]; shown += 1) {
+            if (shown > 0) System.out.println();
             System.out.println("===");
-            currCommit.print();
-            System.out.println();
-            currCommit = currCommit.parent;
+            Commit.read(graph.id(pos)).print();
+            pos = graph.parent(pos);
         }
-        System.out.println("===");
-        container.firstCommit.print();
     }
 
+    /** Show every commit ever made, newest first; takes the same options as log. */
     public void globallog(Container container) {
-        for (Commit com : container.getCommitted()) {
+        int[] options = historyOptions();
+        CommitGraph graph = container.graph();
+        int shown = 0;
+        for (int pos = graph.size() - 1 - options[0]; pos >= 0 && shown != options[1]; pos -= 1) {
             System.out.println("===");
-            System.out.println("Commit " + com.getCommitID());
-            System.out.println(com.getTimeStamp());
-            System.out.println(com.getMessage());
+            Commit.read(graph.id(pos)).print();
             System.out.println();
+            shown += 1;
         }
     }
 
-    /** Prints out the ids of all commits that have the given commit message. */
+    /** Parses the options of log and global-log and returns {skip, count}, where count
+     * is -1 if there is no -n option. */
+    private int[] historyOptions() {
+        int[] options = {0, -1};
+        for (int i = 0; argument != null && i < argument.length; i += 2) {
+            int value = -1;
+            if (i + 1 < argument.length) {
+                try {
+                    value = Integer.parseInt(argument[i + 1]);
+                } catch (NumberFormatException excp) {
+                    value = -1;
+                }
+            }
+            if (value < 0 || !(argument[i].equals("--skip") || argument[i].equals("-n"))) {
+                throw new IllegalArgumentException("Incorrect operands.");
+            }
+            options[argument[i].equals("--skip") ? 0 : 1] = value;
+        }
+        return options;
+    }
+
+    /** Prints out the ids of all commits that have the given commit message, or with
+     * find --contains [words], of all commits whose messages contain each of the words.
+     * Both are answered from the message index rather than by reading every commit. */
     public void find(Container container) {
-        /* Filter out the commits. */
-        List<Commit> resCommit = container.getCommitted().
-                stream().filter(o -> o.message.equals(argument[0])).collect(Collectors.toList());
-        if (resCommit.size() == 0) {
-            System.out.println("Found no commit with that message.");
+        List<String> found = argument.length == 2
+            ? container.messages().containing(argument[1])
+            : container.messages().exact(argument[0]);
+        if (found.isEmpty()) {
+            fail("Found no commit with that message.");
             return;
         }
-        for (Commit commit: resCommit) {
-            System.out.println(commit.id);
+        for (String id : found) {
+            System.out.println(id);
         }
     }
 
@@ -334,7 +418,42 @@ public class Command {
             for (String fileName: orderedRemoved) System.out.println(fileName);
 
         }
-        System.out.println("\n=== Modifications Not Staged For Commit ===\n\n=== Untracked Files ===\n\n");
+        System.out.println();
+        /* Compare the working directory against the staging area and the head commit.
+         * Only files whose size, mtime or inode changed since gitlet last saw them are rehashed. */
+        File curDir = new File(System.getProperty("user.dir"));
+        Index index = container.index();
+        Commit head = container.currCommit;
+        Set<String> modified = new TreeSet<>();
+        Set<String> untrackedFiles = new TreeSet<>();
+        List<String> working = Utils.plainFilePathsIn(curDir);
+        for (String fileName: working) {
+            String workingId = index.id(curDir, fileName);
+            String stagedId = container.stagingArea.get(fileName);
+            if (stagedId != null) {
+                if (!stagedId.equals(workingId)) modified.add(fileName + " (modified)");
+            } else if (head.checkFile(fileName) && container.tracking(fileName)) {
+                if (!head.getFileID(fileName).equals(workingId)) modified.add(fileName + " (modified)");
+            } else {
+                untrackedFiles.add(fileName);
+            }
+        }
+        Set<String> present = new HashSet<>(working);
+        for (String fileName: container.stagingArea.keySet()) {
+            if (!present.contains(fileName)) modified.add(fileName + " (deleted)");
+        }
+        for (String fileName: head.files().keySet()) {
+            if (!present.contains(fileName) && container.tracking(fileName)
+                    && !container.staged(fileName)) {
+                modified.add(fileName + " (deleted)");
+            }
+        }
+        System.out.println("=== Modifications Not Staged For Commit ===");
+        for (String entry: modified) System.out.println(entry);
+        System.out.println();
+        System.out.println("=== Untracked Files ===");
+        for (String fileName: untrackedFiles) System.out.println(fileName);
+        System.out.println();
     }
 
     /** Add a new branch which points to the current head commit.
@@ -343,10 +462,10 @@ public class Command {
     public void branch(Container container) {
         String branchName = argument[0];
         if (container.branchMap.containsKey(branchName)) {
-            System.out.println("A branch with that name already exists.");
+            fail("A branch with that name already exists.");
             return;
         }
-        container.branchMap.put(branchName, container.currCommit);
+        container.branchMap.put(branchName, container.currCommit.id);
     }
 
     /* Remove the branch pointer (delete it from the branchMap);
@@ -355,11 +474,11 @@ public class Command {
     public void rmbranch(Container container) {
         String branchName = argument[0];
         if (!container.branchMap.containsKey(branchName)) {
-            System.out.println("A branch with that name does not exist.");
+            fail("A branch with that name does not exist.");
             return;
         }
         if (container.currBranch.equals(branchName)) {
-            System.out.println("Cannot remove the current branch.");
+            fail("Cannot remove the current branch.");
             return;
         }
         container.branchMap.remove(branchName);
@@ -371,19 +490,17 @@ public class Command {
      * The new version of the file should not be staged. */
 
     public void checkout1(Container container) throws IOException {
-        String fileName = argument[1];
-        if (!container.currCommit.filesMap.containsKey(fileName)) {
-            System.out.println("File does not exist in that commit.");
+        String fileName = path(argument[1]);
+        String blobId = fileName == null ? null : container.currCommit.getFileID(fileName);
+        if (blobId == null) {
+            fail("File does not exist in that commit.");
             return;
         }
-        File toCheckout = new File(GITLETDIR, container.currCommit.filesMap.get(fileName));
-        container.unstage(toCheckout);
         File curDir = new File(System.getProperty("user.dir"));
         File checkedFile = new File(curDir, fileName);
-        checkedFile.createNewFile();
-        // copy contents over to the empty file
-        byte[] content = Utils.readContents(toCheckout);
-        Utils.writeContents(checkedFile, content);
+        // copy contents over from the object store
+        ObjectStore.BLOBS.copyTo(blobId, checkedFile);
+        container.index().record(curDir, fileName, blobId);
     }
 
     /** checkout [commit id] -- [file name]: Takes the version of the file as
@@ -394,36 +511,25 @@ public class Command {
 
     public void checkout2(Container container) throws IOException {
         String id = argument[0];
-        String fileName = argument[2];
+        String fileName = path(argument[2]);
 
-        if (id.length() < 6 || id.length() > 40) {
-            System.out.println("No commit with that id exists.");
+        Commit commit = findCommit(container, id);
+        if (commit == null) {
             return;
         }
-        for (String sha: container.commitMap.keySet()) {
-            if (sha.startsWith(id)) id = sha;
-        }
-        if (container.commitMap.get(id) == null || !container.commitMap.containsKey(id)) {
-            System.out.println("No commit with that id exists.");
-            return;
-        }
-        if (container.commitMap.get(id).filesMap.isEmpty() || !container.commitMap.get(id).filesMap.containsKey(fileName)) {
-            System.out.println("File does not exist in that commit.");
+        String blobId = fileName == null ? null : commit.getFileID(fileName);
+        if (blobId == null) {
+            fail("File does not exist in that commit.");
             return;
         }
 
-        File toCheckout = new File(GITLETDIR, container.commitMap.get(id).filesMap.get(fileName));
-        //File workFile = Utils.writeContents(currFile, Utils.readContents(result)); // HELP
-        container.unstage(toCheckout);
         // get current directory
         File curDir = new File(System.getProperty("user.dir"));
         // append current file name to the working directory
         File checkedFile = new File(curDir, fileName);
-        // create a new empty file inside current new file
-        checkedFile.createNewFile();
-        // copy contents over to the empty file
-        byte[] content = Utils.readContents(toCheckout);
-        Utils.writeContents(checkedFile, content);
+        // copy contents over from the object store
+        ObjectStore.BLOBS.copyTo(blobId, checkedFile);
+        container.index().record(curDir, fileName, blobId);
     }
 
 
@@ -440,53 +546,209 @@ public class Command {
 
     public void checkout3(Container container) throws IOException {
         String branchName = argument[0];
-        if (!container.branchMap.containsKey(branchName)) {
-            System.out.println("No such branch exists.");
+        Commit target = container.branchHead(branchName);
+        if (target == null) {
+            fail("No such branch exists.");
             return;
-        } else if (container.branchMap.get(branchName).equals(container.currCommit)) {
-            System.out.println("No need to checkout the current branch.");
+        } else if (target.id.equals(container.currCommit.id)) {
+            fail("No need to checkout the current branch.");
             return;
         }
+        if (!checkoutCommit(container, target)) return;
+        // clear staging area, unless the checked-out branch is the current branch
+        if (!branchName.equals(container.currBranch)) {
+            container.stagingArea.clear();
+        }
+        // set given branch to current branch
+        container.currCommit = target;
+        container.currBranch = branchName;
+    }
+
+
+
+    /** Returns the commit whose id is ID or, if ID is abbreviated, the only commit whose id
+     * starts with it. Abbreviations must be at least 6 characters long. Prints a message
+     * and returns null if there is no such commit or more than one. */
+    private Commit findCommit(Container container, String id) {
+        List<String> found = id.length() < 6 || id.length() > 40
+            ? Collections.emptyList() : container.graph().resolve(id, 2);
+        if (found.isEmpty()) {
+            fail("No commit with that id exists.");
+            return null;
+        }
+        if (found.size() > 1) {
+            fail("Ambiguous commit id.");
+            return null;
+        }
+        return Commit.load(found.get(0));
+    }
+
+    /** Makes the working directory match TARGET, starting from the files of the current commit.
+     * Only files whose blob differs between the two commits are written, plus any file the
+     * commits agree on whose working copy no longer matches; everything else is left alone.
+     * Writes and deletions are spread over the worker pool. Returns false without touching
+     * anything if an untracked file would be overwritten. */
+    private boolean checkoutCommit(Container container, Commit target) {
         File curDir = new File(System.getProperty("user.dir"));
-        File[] fileList = curDir.listFiles();
-        ArrayList<String> workingDirectoryname = new ArrayList<>();
-        for (File file: fileList) workingDirectoryname.add(file.getName());
-        for (String fName : container.branchMap.get(branchName).filesMap.keySet()) {
-            if (!container.currCommit.filesMap.containsKey(fName) && workingDirectoryname.contains(fName)
-                    && (!container.branchMap.get(branchName).filesMap.get(fName)
-                    .equals(Utils.sha1(Utils.readContents(new File(curDir, fName)))))) {
-                System.out.println("There is an untracked file in the way; delete it or add it first.");
+        Index index = container.index();
+        /* The tree diff never descends into subtrees the two commits share. */
+        Map<String, String[]> changed = Tree.diff(container.currCommit.treeId(), target.treeId());
+        for (Map.Entry<String, String[]> entry : changed.entrySet()) {
+            String[] ids = entry.getValue();
+            if (ids[0] == null) {
+                /* The index returns null for missing files and only rehashes files that changed. */
+                String workingId = index.id(curDir, entry.getKey());
+                if (workingId == null || workingId.equals(ids[1])) continue;
+                fail("There is an untracked file in the way; delete it or add it first.");
+                return false;
+            }
+        }
+        Map<String, String> wanted = target.files();
+        List<String> toWrite = new ArrayList<>();
+        List<String> toDelete = new ArrayList<>();
+        for (Map.Entry<String, String[]> entry : changed.entrySet()) {
+            if (entry.getValue()[1] == null) toDelete.add(entry.getKey());
+            else toWrite.add(entry.getKey());
+        }
+        /* Files the commits agree on are still restored if their working copy was edited;
+         * the index answers from metadata for every file that was not touched. */
+        for (Map.Entry<String, String> entry : wanted.entrySet()) {
+            String fName = entry.getKey();
+            if (!changed.containsKey(fName) && !entry.getValue().equals(index.id(curDir, fName))) {
+                toWrite.add(fName);
+            }
+        }
+        Workers.map(toDelete, fName -> {
+            deleteWorkingFile(curDir, fName);
+            index.forget(fName);
+            return null;
+        });
+        Workers.map(toWrite, fName -> {
+            // copy contents over from the object store
+            ObjectStore.BLOBS.copyTo(wanted.get(fName), new File(curDir, fName));
+            index.record(curDir, fName, wanted.get(fName));
+            return null;
+        });
+        if (VERBOSE) {
+            System.err.println("Checked out " + target.id + ": " + toWrite.size() + " written, "
+                    + (wanted.size() - toWrite.size()) + " unchanged, " + toDelete.size() + " removed.");
+        }
+        return true;
+    }
+
+    /** Deletes the working file PATH under CURDIR, then any directories that leaves empty. */
+    private static void deleteWorkingFile(File curDir, String path) {
+        File file = new File(curDir, path);
+        file.delete();
+        for (File dir = file.getParentFile(); !dir.equals(curDir) && dir.delete(); ) {
+            dir = dir.getParentFile();
+        }
+    }
+
+    /** Returns NAME as a path relative to the working directory, with '/' between names as
+     * trees store it, or null if it lies outside the working directory. */
+    private static String path(String name) {
+        Path path = Paths.get(name).normalize();
+        if (path.isAbsolute() || path.startsWith("..") || path.toString().isEmpty()) return null;
+        return path.toString().replace(File.separatorChar, '/');
+    }
+
+    /** diff [commit id [commit id]]: Shows how the files of the head commit, or of the given
+     * commit, differ from those in the working directory, or how those of two commits differ,
+     * as a unified diff. In the working directory, the files tracked by the commit or staged
+     * for addition are compared; other files are not. Only files whose blob ids differ are read. */
+    public void diff(Container container) {
+        Commit from = argument == null ? container.currCommit : findCommit(container, argument[0]);
+        if (from == null) {
+            return;
+        }
+        if (argument != null && argument.length == 2) {
+            Commit to = findCommit(container, argument[1]);
+            if (to == null) {
                 return;
             }
+            for (Map.Entry<String, String[]> entry : Tree.diff(from.treeId(), to.treeId()).entrySet()) {
+                String[] ids = entry.getValue();
+                diffFile(entry.getKey(), ids[0] == null ? null : ObjectStore.BLOBS.get(ids[0]),
+                         ids[1] == null ? null : ObjectStore.BLOBS.get(ids[1]));
+            }
+            return;
         }
-        for (String fName : container.currCommit.filesMap.keySet()) {
-            if (workingDirectoryname.contains(fName) && !container.branchMap
-                    .get(branchName).filesMap.containsKey(fName)) {
-                File toDelete = new File(curDir, fName);
-                toDelete.delete();
+        File curDir = new File(System.getProperty("user.dir"));
+        Index index = container.index();
+        Set<String> paths = new TreeSet<>(from.files().keySet());
+        paths.addAll(container.stagingArea.keySet());
+        for (String path : paths) {
+            String oldId = from.getFileID(path);
+            File working = new File(curDir, path);
+            String newId = working.isFile() ? index.id(curDir, path) : null;
+            if (oldId == null ? newId != null : !oldId.equals(newId)) {
+                diffFile(path, oldId == null ? null : ObjectStore.BLOBS.get(oldId),
+                         newId == null ? null : Utils.readContents(working));
             }
         }
-        for (String a : container.branchMap.get(branchName).filesMap.keySet()) {
-            File toUnStage = new File(GITLETDIR, container.branchMap.
-                    get(branchName).filesMap.get(a));
-            // append current file name to the working directory
-            File checkedFile = new File(curDir, a);
-            // create a new empty file inside current new file
-            checkedFile.createNewFile();
-            // copy contents over to the empty file
-            byte[] content = Utils.readContents(toUnStage);
-            Utils.writeContents(checkedFile, content);
+    }
+
+    /** Prints the differences between OLDCONTENTS and NEWCONTENTS of the file PATH, either of which
+     * is null where the file is missing. */
+    private static void diffFile(String path, byte[] oldContents, byte[] newContents) {
+        System.out.println("diff --gitlet a/" + path + " b/" + path);
+        byte[] a = oldContents == null ? new byte[0] : oldContents;
+        byte[] b = newContents == null ? new byte[0] : newContents;
+        if (Diff.binary(a) || Diff.binary(b)) {
+            System.out.println("Binary files a/" + path + " and b/" + path + " differ");
+            return;
         }
-        // clear staging area, unless the checked-out branch is the current branch
-        if (container.branchMap.get(branchName) != container.branchMap.get(container.currBranch)) {
-            container.stagingArea.clear();
+        new Diff(a, b).writeUnified(System.out, oldContents == null ? "/dev/null" : "a/" + path,
+                                    newContents == null ? "/dev/null" : "b/" + path);
+    }
+
+    /** gc [--grace SECONDS]: Deletes the commits, trees and blobs that no branch or staged file
+     * can reach, except those written less than SECONDS ago, and reports how much was freed. */
+    public void gc(Container container) {
+        long grace = 0;
+        if (argument != null) {
+            try {
+                if (argument.length != 2 || !argument[0].equals("--grace")) throw new NumberFormatException();
+                grace = Long.parseLong(argument[1]);
+                if (grace < 0) throw new NumberFormatException();
+            } catch (NumberFormatException e) {
+                fail("Incorrect operands.");
+                return;
+            }
         }
-        // set given branch to current branch
-        container.currCommit = container.branchMap.get(branchName);
-        container.currBranch = branchName;
+        new GarbageCollector(container, grace * 1000).run();
     }
 
+    /** repack: Gathers the commits, trees and blobs that a branch or staged file can reach into
+     * packs, storing the versions of each file as deltas against one another. */
+    public void repack(Container container) {
+        if (argument != null) {
+            fail("Incorrect operands.");
+            return;
+        }
+        new Repack(container).run();
+    }
+
+    /** count-objects: Reports how many commits, trees and blobs there are, loose and packed, and
+     * the bytes they take compressed and uncompressed. */
+    public void countObjects(Container container) {
+        if (argument != null) {
+            fail("Incorrect operands.");
+            return;
+        }
+        new Stats(container).countObjects();
+    }
 
+    /** stats: Reports the objects and metadata files and their sizes, the commits, depth and
+     * unique objects of each branch, the unreachable objects, and the largest blobs. */
+    public void stats(Container container) {
+        if (argument != null) {
+            fail("Incorrect operands.");
+            return;
+        }
+        new Stats(container).run();
+    }
 
     /* Check-out implementation, checks out file based on specified command */
     public void checkout(Container container) {
@@ -494,7 +756,7 @@ public class Command {
             if (argument.length == 1) checkout3(container);
             else if (argument.length == 2 && argument[0].equals("--")) checkout1(container);
             else if (argument.length == 3 && argument[1].equals("--")) checkout2(container);
-            else System.out.println("Incorrect operands.");
+            else fail("Incorrect operands.");
         } catch (IOException | IllegalArgumentException e) { e.printStackTrace(); }
     }
 
@@ -509,29 +771,15 @@ public class Command {
     that also changes the current branch head pointer.*/
 
     public void reset(Container container) {
-        String id = argument[0];
-        Commit resCommit = null;
-        if (id.length() < 40 && id.length() >= 6) {
-            for (String shaL: container.commitMap.keySet()) {
-                String shaS = shaL.substring(0, id.length());
-                if (shaS.equals(id)) {
-                    resCommit = container.commitMap.get(shaL);
-                    break;
-                }
-            }
-        }
-        if (!container.commitMap.containsKey(id) && resCommit == null) {
-            System.out.println("No commit with that id exists.");
+        Commit resCommit = findCommit(container, argument[0]);
+        if (resCommit == null) {
             return;
-        } else if (container.commitMap.containsKey(id)) resCommit = container.commitMap.get(id);
+        }
         // remove tracked files not present in the given commit
         // check out files in the given commit
+        if (!checkoutCommit(container, resCommit)) return;
         // move head pointer to the given commit
-        container.branchMap.put(container.currBranch, resCommit);
-        Command newCommand = new Command("checkout", container.currBranch);
-        newCommand.execute(container);
-        container.currCommit = resCommit;
-        container.branchMap.put(container.currBranch, container.currCommit);
+        container.moveHead(resCommit);
         container.stagingArea.clear();
     }
 
@@ -566,15 +814,15 @@ public class Command {
 
     public boolean preMergeChecker(Commit other, String givenBranch, Container container) {
         if (other == null) {
-            System.out.println("A branch with that name does not exist.");
+            fail("A branch with that name does not exist.");
             return false;
         }
         if (givenBranch.equals(container.currBranch)) {
-            System.out.println("Cannot merge a branch with itself.");
+            fail("Cannot merge a branch with itself.");
             return false;
         }
         if (!container.stagingArea.isEmpty() || !container.untracked.isEmpty()) {
-            System.out.println("You have uncommitted changes.");
+            fail("You have uncommitted changes.");
             return false;
         }
         return true;
@@ -582,105 +830,111 @@ public class Command {
 
     public void merge(Container container) {
         String givenBranch = argument[0];
-        Commit otherCommit = container.branchMap.get(givenBranch);
-        ArrayList<String> modifiedOther = new ArrayList<>();
-        ArrayList<String> modifiedMaster = new ArrayList<>();
+        Commit otherCommit = container.branchHead(givenBranch);
         Boolean conflict = false;
         if (!preMergeChecker(otherCommit, givenBranch, container)) return;
         Commit splitPoint = container.ancestor(container.currCommit, otherCommit);
         File curDir = new File(System.getProperty("user.dir"));
-        File[] fileList = curDir.listFiles();
-        ArrayList<String> workingDirectoryname = new ArrayList<>();
-        for (File file: fileList) workingDirectoryname.add(file.getName());
-        for (String fileName: otherCommit.filesMap.keySet()) {
-            if (!container.currCommit.filesMap.containsKey(fileName) && workingDirectoryname.contains(fileName)
-                    && (!otherCommit.filesMap.get(fileName).equals(Utils.sha1(Utils.readContents(new File(curDir, fileName)))))) {
-                System.out.println("There is an untracked file in the way; delete it or add it first.");
+        Index index = container.index();
+        for (Map.Entry<String, String[]> entry
+                : Tree.diff(container.currCommit.treeId(), otherCommit.treeId()).entrySet()) {
+            String[] ids = entry.getValue();
+            if (ids[0] == null && ids[1] != null) {
+                String workingId = index.id(curDir, entry.getKey());
+                if (workingId == null || workingId.equals(ids[1])) continue;
+                fail("There is an untracked file in the way; delete it or add it first.");
                 return;
             }
         }
-        if (splitPoint == otherCommit) {
+        if (splitPoint.id.equals(otherCommit.id)) {
             System.out.println("Given branch is an ancestor of the current branch.");
             return;
         }
-        if (splitPoint == container.currCommit) {
-            container.currCommit = otherCommit;
-            container.branchMap.put(container.currBranch, container.currCommit);
+        if (splitPoint.id.equals(container.currCommit.id)) {
+            container.moveHead(otherCommit);
             System.out.println("Current branch fast-forwarded.");
             return;
         }
-        mergeHelper(modifiedMaster, modifiedOther, otherCommit, splitPoint, container);
-        for (String fileName: modifiedOther) {
-            if (otherCommit.filesMap.get(fileName) != null) {
-                if (modifiedMaster.contains(fileName)) {
-                    conflict = true;
-                    conflictHelper(otherCommit.filesMap.get(fileName),
-                            container.currCommit.filesMap.get(fileName), container, fileName);
-                } else {
-                    try {
-                        String sha = otherCommit.filesMap.get(fileName);
-                        container.stagingArea.put(fileName, sha);
-                        File saFile = new File(saDir, sha);
-                        saFile.createNewFile();
-                        File historyFile = new File(GITLETDIR, sha);
-                        byte[] saByte = Utils.readContents(historyFile);
-                        Utils.writeContents(saFile, saByte);
-                        Command newCommand = new Command("checkout", otherCommit.id, "--", fileName);
-                        newCommand.execute(container);
-                    } catch (IOException e) { return; }
+        /* Files changed since the split point on each side; subtrees unchanged on a side are skipped. */
+        Map<String, String[]> modifiedOther = Tree.diff(splitPoint.treeId(), otherCommit.treeId());
+        Map<String, String[]> modifiedMaster = Tree.diff(splitPoint.treeId(), container.currCommit.treeId());
+        List<String> modifiedBoth = new ArrayList<>();
+        for (Map.Entry<String, String[]> entry: modifiedOther.entrySet()) {
+            String fileName = entry.getKey();
+            String otherId = entry.getValue()[1];
+            String[] master = modifiedMaster.get(fileName);
+            if (master != null) {
+                /* Changed the same way on both sides, the file needs nothing. */
+                if (master[1] == null ? otherId != null : !master[1].equals(otherId)) {
+                    modifiedBoth.add(fileName);
                 }
+            } else if (otherId != null) {
+                /* The blob is already in the object store, so staging it only records its id. */
+                String sha = otherId;
+                container.stagingArea.put(fileName, sha);
+                Command newCommand = new Command("checkout", otherCommit.id, "--", fileName);
+                newCommand.execute(container);
             } else {
-                if (modifiedMaster.contains(fileName)) {
-                    conflict = true;
-                    conflictHelper(otherCommit.filesMap.get(fileName),
-                            container.currCommit.filesMap.get(fileName), container, fileName);
-                }
-                if (!modifiedMaster.contains(fileName)) {
-                    File currDir = new File(System.getProperty("user.dir"), fileName);
-                    container.untrack(fileName);
-                    currDir.delete();
-                }
+                container.untrack(fileName);
+                deleteWorkingFile(curDir, fileName);
+                index.forget(fileName);
             }
         }
+        /* Files changed differently on both sides are merged line by line, each on the worker pool. */
+        List<String> mergedIds = Workers.map(modifiedBoth, fileName -> mergeFile(curDir, index, fileName,
+                modifiedOther.get(fileName)[0], modifiedMaster.get(fileName)[1], modifiedOther.get(fileName)[1]));
+        for (int i = 0; i < modifiedBoth.size(); i += 1) {
+            if (mergedIds.get(i) == null) conflict = true;
+            else container.stagingArea.put(modifiedBoth.get(i), mergedIds.get(i));
+        }
         if (!conflict) {
             Command newCommand = new Command("commit", "Merged " + container.currBranch + " with " + givenBranch + ".");
             newCommand.execute(container);
         } else {
-            System.out.println("Encountered a merge conflict.");
+            fail("Encountered a merge conflict.");
             container.untracked.clear();
         }
     }
 
-    private void mergeHelper(ArrayList<String> katherine, ArrayList<String> amanda,
-                             Commit qitian, Commit zuojun, Container david) {
-        for (String fname : qitian.filesMap.keySet()) {
-            if (!zuojun.filesMap.containsKey(fname)
-                    || !qitian.filesMap.get(fname).equals(zuojun.filesMap.get(fname))) {
-                amanda.add(fname);
-            }
-        }
-        for (String fileName: david.currCommit.filesMap.keySet()) {
-            if (!zuojun.filesMap.keySet().contains(fileName)
-                    || !zuojun.filesMap.get(fileName).equals(david.currCommit.filesMap.get(fileName))) {
-                katherine.add(fileName);
-            }
-        }
-        for (String fileName: zuojun.filesMap.keySet()) {
-            if (!qitian.filesMap.containsKey(fileName)) amanda.add(fileName);
-        }
+    /** Writes to the working file PATH under CURDIR the result of merging into the blob BASEID (null
+     * if the file was added on both sides) the changes made by OURSID and THEIRSID, either of which is
+     * null if that side removed the file. A clean result is stored and its id returned; on a conflict,
+     * returns null. A file removed on one side, or binary, conflicts as a whole. */
+    private String mergeFile(File curDir, Index index, String path, String baseId, String oursId, String theirsId) {
+        if (oursId == null || theirsId == null) {
+            conflictHelper(theirsId, oursId, null, path);
+            return null;
+        }
+        byte[] base = baseId == null ? new byte[0] : ObjectStore.BLOBS.get(baseId);
+        byte[] ours = ObjectStore.BLOBS.get(oursId);
+        byte[] theirs = ObjectStore.BLOBS.get(theirsId);
+        if (Diff.binary(base) || Diff.binary(ours) || Diff.binary(theirs)) {
+            conflictHelper(theirsId, oursId, null, path);
+            return null;
+        }
+        Merge merge = new Merge(base, ours, theirs);
+        Utils.writeContents(new File(curDir, path), merge.result);
+        if (merge.conflicts > 0) {
+            return null;
+        }
+        String id = Utils.sha1(merge.result);
+        ObjectStore.BLOBS.put(id, merge.result);
+        index.record(curDir, path, id);
+        return id;
     }
+
     private void conflictHelper(String otherSha, String currSha, Container container, String fname) {
-        byte[] prefix = "<<<<<<< HEAD\n".getBytes(StandardCharsets.UTF_8);
-        byte[] sep = "=======\n".getBytes(StandardCharsets.UTF_8);
-        byte[] postfix = ">>>>>>>\n".getBytes(StandardCharsets.UTF_8);
+        byte[] prefix = Merge.OURS;
+        byte[] sep = Merge.SEPARATOR;
+        byte[] postfix = Merge.THEIRS;
         byte[] v1 = new byte[0];
         byte[] v2 = new byte[0];
         File currDir = new File(System.getProperty("user.dir"), fname);
-        File currFile = new File(GITLETDIR, currSha);
-        v1 = Utils.readContents(currFile);
+        if (currSha != null) {
+            v1 = ObjectStore.BLOBS.get(currSha);
+        }
         if (otherSha != null) {
-            File otherFile = new File(GITLETDIR, otherSha);
-            v2 = Utils.readContents(otherFile);
+            v2 = ObjectStore.BLOBS.get(otherSha);
         } else if (otherSha == null) {
             v2 = new byte[0];
         }
@@ -694,6 +948,7 @@ public class Command {
         System.arraycopy(v2, 0, combined, prefix.length + v1.length + sep.length, v2.length);
         System.arraycopy(postfix, 0, combined, prefix.length
                 + v1.length + sep.length + v2.length, postfix.length);
+        currDir.getParentFile().mkdirs();
         Utils.writeContents(currDir, combined);
     }
 }
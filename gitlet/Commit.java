@@ -14,28 +14,88 @@ public class Commit implements Serializable {
     /* The commit time (metadata). */
     public String timeStamp;
 
-    /* Parent commit of the current commit. */
-    public Commit parent;
+    /* SHA-id of the parent commit, or null for the initial commit. */
+    public String parentId;
+
+    /* Parent commit of the current commit, loaded on first use. */
+    private transient Commit parent;
 
     /* List of Blob objects that stores the content. */
     public ArrayList<File> files;
 
-    /* Maps commit's file names to sha ids.*/
+    /* Maps commit's file paths to sha ids, for commits made before trees; null for
+     * commits with a tree, whose files are read from it by files(). */
     public HashMap<String, String> filesMap;
 
+    /* Every file of the commit, by path, once files() has been called. It shares
+     * all but the changed paths with the parent's, if that was in memory first. */
+    private transient FileMap snapshot;
+
+    /* SHA-id of the commit's root tree, or null for commits made before trees
+     * until treeId() builds one from filesMap. */
+    public String treeId;
+
     /* SHA-id of the commit. */
     public String id;
 
+    /* Most commits held in LOADED at once. */
+    private static final int LOADED_LIMIT = 8192;
+
+    /* Commits recently read or saved in this process, which may be a daemon's that runs
+     * command after command. A commit dropped from here and read again is a new object
+     * with the same contents, which is harmless as commits are immutable. */
+    private static final Map<String, Commit> LOADED = Utils.lruMap(LOADED_LIMIT);
+
     /* Construct a commit object using known information
      * and generate its as well as its files' SHA-id . */
     public Commit(String message, String timeStamp, Commit parent, HashMap<String, String> filesMap, String id) {
         this.message = message;
         this.timeStamp = timeStamp;
         this.parent = parent;
+        this.parentId = parent == null ? null : parent.id;
         this.filesMap = filesMap;
         this.id = id;
     }
 
+    /* Construct a commit whose files are those of the tree TREEID. */
+    public Commit(String message, String timeStamp, Commit parent, String treeId, String id) {
+        this.message = message;
+        this.timeStamp = timeStamp;
+        this.parent = parent;
+        this.parentId = parent == null ? null : parent.id;
+        this.treeId = treeId;
+        this.id = id;
+    }
+
+    /* Returns the commit with the given full ID, reading it from the commit store
+     * the first time it is asked for. Returns null if there is no such commit. */
+    public static Commit load(String id) {
+        if (id == null) return null;
+        Commit commit = LOADED.get(id);
+        Trace.cache(Trace.Counter.COMMIT_CACHE_HITS, Trace.Counter.COMMIT_CACHE_MISSES,
+                    commit != null);
+        if (commit == null && ObjectStore.COMMITS.contains(id)) {
+            commit = Codec.decodeCommit(ObjectStore.COMMITS.get(id));
+            LOADED.put(id, commit);
+        }
+        return commit;
+    }
+
+    /* Returns the commit with the given full ID like load, but without keeping it, for walks
+     * over more commits than are worth holding in memory at once. */
+    public static Commit read(String id) {
+        Commit commit = LOADED.get(id);
+        return commit != null ? commit : Codec.decodeCommit(ObjectStore.COMMITS.get(id));
+    }
+
+    /* Writes this commit to the commit store. Commits are immutable, so this only
+     * ever happens once per id. */
+    public void save() {
+        treeId();
+        ObjectStore.COMMITS.put(id, Codec.encodeCommit(this));
+        LOADED.put(id, this);
+    }
+
     /* Returns the commit message. */
     public String getMessage() {
         return message;
@@ -46,8 +106,43 @@ public class Commit implements Serializable {
         return timeStamp;
     }
 
-    /* Returns the parent's id. */
+    /* Returns the id of the root tree, first storing one for commits made before trees. */
+    public String treeId() {
+        if (treeId == null) {
+            treeId = Tree.write(filesMap);
+        }
+        return treeId;
+    }
+
+    /* Returns every file of the commit, by path. The first time, this is the parent's
+     * map with the files that differ between the two trees changed, if the parent's map
+     * is already in memory, and otherwise made by reading in all of the commit's trees. */
+    public Map<String, String> files() {
+        if (snapshot == null) {
+            Commit base = parent != null ? parent : parentId == null ? null : LOADED.get(parentId);
+            if (filesMap != null) {
+                snapshot = FileMap.of(filesMap);
+            } else if (base != null && base.snapshot != null) {
+                FileMap files = base.snapshot;
+                for (Map.Entry<String, String[]> change : Tree.diff(base.treeId(), treeId).entrySet()) {
+                    String blob = change.getValue()[1];
+                    files = blob == null ? files.minus(change.getKey()) : files.plus(change.getKey(), blob);
+                }
+                snapshot = files;
+            } else {
+                HashMap<String, String> files = new HashMap<>();
+                Tree.flatten(treeId, files);
+                snapshot = FileMap.of(files);
+            }
+        }
+        return snapshot;
+    }
+
+    /* Returns the parent commit, reading it in if it has not been yet. */
     public Commit getParent() {
+        if (parent == null && parentId != null) {
+            parent = load(parentId);
+        }
         return parent;
     }
 
@@ -64,12 +159,15 @@ public class Commit implements Serializable {
 
     /* Checks if the commit contains the file */
     public boolean checkFile(String filename) {
-        return filesMap.containsKey(filename);
+        return getFileID(filename) != null;
     }
 
     /* Returns the sha-id of the file. */
     public String getFileID(String filename) {
-        return filesMap.get(filename);
+        if (filesMap != null || snapshot != null) {
+            return files().get(filename);
+        }
+        return Tree.lookup(treeId, filename);
     }
 
     public void print() {
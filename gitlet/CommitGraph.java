@@ -0,0 +1,300 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+
+/* The commit graph: every commit in the repository, numbered densely in
+   the order it was added, with its parent's number, its generation (1 for
+   the initial commit, one more than its parent otherwise) and a jump
+   pointer to a further ancestor.
+
+   Jump pointers follow Myers' skew-binary scheme: a commit jumps either to
+   its parent, or, when its parent's jump and that jump's own jump span the
+   same distance, to the grandparent-of-jumps. Any ancestor at a given
+   generation is then reachable in O(log n) steps, so merge-base and
+   is-ancestor queries cost O(log n) regardless of history length, and a
+   new commit needs only O(1) work to add.
+
+   The graph lives in .gitlet/commit-graph: an 8-byte header followed by
+   fixed-size records (20-byte id, then parent, jump and generation as
+   4-byte ints; -1 for no parent). Records are only ever appended, and the
+   file is memory-mapped, so opening it costs nothing and a query touches
+   only the records it visits. A torn last record is ignored. */
+class CommitGraph {
+
+    /* Where the graph lives. */
+    static final File GRAPH_FILE = new File(Command.GITLETDIR, "commit-graph");
+
+    /* File header: magic and format version. */
+    private static final int MAGIC = 0x474c4752;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+
+    /* Size of one record, and offsets within it. */
+    private static final int RECORD_SIZE = 32;
+    private static final int PARENT = 20;
+    private static final int JUMP = 24;
+    private static final int GENERATION = 28;
+
+    /* The mapped records. */
+    private ByteBuffer records;
+
+    /* Number of complete records. */
+    private int size;
+
+    /* Sorted index from ids to positions, opened on first lookup. */
+    private IdIndex ids;
+
+    private CommitGraph() {
+    }
+
+    /* Returns the graph stored in GRAPH_FILE, building it from the commit
+       store if the file is missing (as in repositories made before it
+       existed). */
+    static CommitGraph open() {
+        CommitGraph graph = new CommitGraph();
+        if (GRAPH_FILE.isFile()) {
+            graph.map();
+        } else {
+            graph.records = ByteBuffer.allocate(0);
+            graph.rebuild();
+        }
+        return graph;
+    }
+
+    /* Returns the number of commits in the graph. */
+    int size() {
+        return size;
+    }
+
+    /* Returns the id of the commit at POS. */
+    String id(int pos) {
+        byte[] id = new byte[20];
+        ByteBuffer record = records.duplicate();
+        record.position(pos * RECORD_SIZE);
+        record.get(id);
+        return Utils.toHex(id, 0, 20);
+    }
+
+    /* Returns the position of the parent of POS, or -1. */
+    int parent(int pos) {
+        return records.getInt(pos * RECORD_SIZE + PARENT);
+    }
+
+    /* Returns the generation of POS; the initial commit has generation 1. */
+    int generation(int pos) {
+        return records.getInt(pos * RECORD_SIZE + GENERATION);
+    }
+
+    private int jump(int pos) {
+        return records.getInt(pos * RECORD_SIZE + JUMP);
+    }
+
+    /* Returns the position of the commit ID, or -1 if it is not in the
+       graph. */
+    int position(String id) {
+        return ids().position(id);
+    }
+
+    /* Returns the ids of up to LIMIT commits whose ids start with PREFIX. */
+    List<String> resolve(String prefix, int limit) {
+        List<String> result = new ArrayList<>();
+        for (int pos : ids().matches(prefix, limit)) {
+            result.add(id(pos));
+        }
+        return result;
+    }
+
+    /* Returns the id index, opening it if need be. */
+    private IdIndex ids() {
+        if (ids == null) {
+            ids = new IdIndex(this);
+        }
+        return ids;
+    }
+
+    /* Returns the position of COMMIT, first adding it and any of its
+       ancestors that are missing (for instance after a crash between
+       saving a commit and recording it here). */
+    int position(Commit commit) {
+        int pos = position(commit.id);
+        if (pos >= 0) {
+            return pos;
+        }
+        Deque<Commit> missing = new ArrayDeque<>();
+        int parentPos = -1;
+        for (Commit c = commit; c != null; c = c.getParent()) {
+            parentPos = position(c.id);
+            if (parentPos >= 0) {
+                break;
+            }
+            missing.push(c);
+        }
+        while (!missing.isEmpty()) {
+            parentPos = add(missing.pop().id, parentPos);
+        }
+        return parentPos;
+    }
+
+    /* Appends the commit ID, whose parent is at PARENTPOS (-1 for none),
+       and returns its position. */
+    int add(String id, int parentPos) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        link(record.put(Utils.fromHex(id)), records, parentPos);
+        record.flip();
+        try (FileChannel out = FileChannel.open(GRAPH_FILE.toPath(),
+                 StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            if (out.size() == 0) {
+                out.write(header());
+            }
+            out.write(record, HEADER_SIZE + (long) size * RECORD_SIZE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        map();
+        ids().refresh();
+        return size - 1;
+    }
+
+    /* Puts into OUT the parent, jump and generation of a commit whose parent
+       is at PARENTPOS (-1 for none) among the records RECS. */
+    private static void link(ByteBuffer out, ByteBuffer recs, int parentPos) {
+        int jump, generation;
+        if (parentPos < 0) {
+            jump = -1;
+            generation = 1;
+        } else {
+            int parentGen = recs.getInt(parentPos * RECORD_SIZE + GENERATION);
+            int parentJump = recs.getInt(parentPos * RECORD_SIZE + JUMP);
+            int jumpJump = parentJump < 0 ? -1 : recs.getInt(parentJump * RECORD_SIZE + JUMP);
+            generation = parentGen + 1;
+            if (jumpJump >= 0 && parentGen - recs.getInt(parentJump * RECORD_SIZE + GENERATION)
+                == recs.getInt(parentJump * RECORD_SIZE + GENERATION)
+                   - recs.getInt(jumpJump * RECORD_SIZE + GENERATION)) {
+                jump = jumpJump;
+            } else {
+                jump = parentPos;
+            }
+        }
+        out.putInt(parentPos).putInt(jump).putInt(generation);
+    }
+
+    /* Rewrites the graph to hold only the commits at the positions in KEEP,
+       which must include every parent of each, in the same order. The id
+       index, whose positions this changes, is rebuilt. */
+    void retain(BitSet keep) {
+        int[] moved = new int[size];
+        ByteBuffer kept = ByteBuffer.allocate(keep.cardinality() * RECORD_SIZE);
+        byte[] id = new byte[20];
+        int n = 0;
+        for (int pos = keep.nextSetBit(0); pos >= 0 && pos < size; pos = keep.nextSetBit(pos + 1)) {
+            int parent = parent(pos);
+            records.get(pos * RECORD_SIZE, id);
+            link(kept.put(id), kept, parent < 0 ? -1 : moved[parent]);
+            moved[pos] = n;
+            n += 1;
+        }
+        kept.flip();
+        try {
+            File temp = File.createTempFile("commit-graph-", null, Command.GITLETDIR);
+            try (FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE)) {
+                out.write(header());
+                while (kept.hasRemaining()) {
+                    out.write(kept);
+                }
+            }
+            Files.move(temp.toPath(), GRAPH_FILE.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.deleteIfExists(IdIndex.INDEX_FILE.toPath());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        ids = null;
+        map();
+        ids().refresh();
+    }
+
+    /* Returns the ancestor of POS (possibly POS itself) with generation
+       GEN, which must not exceed POS's. */
+    int ancestorAt(int pos, int gen) {
+        while (generation(pos) > gen) {
+            int jump = jump(pos);
+            pos = generation(jump) >= gen ? jump : parent(pos);
+        }
+        return pos;
+    }
+
+    /* Returns the position of the nearest common ancestor of A and B. */
+    int mergeBase(int a, int b) {
+        int gen = Math.min(generation(a), generation(b));
+        a = ancestorAt(a, gen);
+        b = ancestorAt(b, gen);
+        /* A and B now have the same generation, so their jumps do too. */
+        while (a != b) {
+            if (jump(a) != jump(b)) {
+                a = jump(a);
+                b = jump(b);
+            } else {
+                a = parent(a);
+                b = parent(b);
+            }
+        }
+        return a;
+    }
+
+    /* Returns true iff ANCESTOR is a proper ancestor of POS. */
+    boolean isAncestor(int ancestor, int pos) {
+        return generation(ancestor) < generation(pos)
+            && ancestorAt(pos, generation(ancestor)) == ancestor;
+    }
+
+    /* Maps GRAPH_FILE, refusing files written by a newer format. */
+    private void map() {
+        try (FileChannel in = FileChannel.open(GRAPH_FILE.toPath(),
+                                               StandardOpenOption.READ)) {
+            long length = in.size();
+            if (length < HEADER_SIZE) {
+                records = ByteBuffer.allocate(0);
+                size = 0;
+                return;
+            }
+            MappedByteBuffer header = in.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt(0) != MAGIC || header.getInt(4) > VERSION) {
+                throw new IllegalArgumentException("unreadable commit graph");
+            }
+            size = (int) ((length - HEADER_SIZE) / RECORD_SIZE);
+            records = in.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE,
+                             (long) size * RECORD_SIZE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /* Adds every commit in the commit store, parents first. */
+    private void rebuild() {
+        for (String id : ObjectStore.COMMITS.ids()) {
+            Commit commit = Commit.load(id);
+            if (commit != null) {
+                position(commit);
+            }
+        }
+    }
+
+    private static ByteBuffer header() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION);
+        header.flip();
+        return header;
+    }
+}
@@ -1,6 +1,8 @@
 package gitlet;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.Map;
 import java.util.ArrayList;
@@ -11,63 +13,122 @@ import java.util.List;
 import java.util.Collections;
 
 
+/* The refs and staging state of a repository. Commits themselves live in
+ * ObjectStore.COMMITS; the container only records their ids, so saving and
+ * loading it costs the same no matter how long the history is. */
 public class Container implements Serializable {
-    /* The commit object which the current branch points to. */
-    public Commit currCommit;
+    /* The commit object which the current branch points to;
+     * re-read from the commit store whenever the container is loaded. */
+    public transient Commit currCommit;
 
     /* current branch */
     public String currBranch;
 
-    /* Maps branch name to its head commit. */
-    public HashMap<String, Commit> branchMap;
-
-    /* An arraylist of committed objects. */
-    public ArrayList<Commit> committed;
-
-    /* Maps SHA-1 to commit object. */
-    public HashMap<String, Commit> commitMap;
+    /* Maps branch name to the SHA-1 of its head commit. */
+    public HashMap<String, String> branchMap;
 
     /* Maps file name of staged files to SHA-1. */
     public HashMap<String, String> stagingArea;
 
-    /* Maps SHA-1 to file name. */
-    public HashMap<String, String> shaNameMap;
-
     /* A set of file names that are untracked. */
     public HashSet<String> untracked;
 
-    public Commit firstCommit;
+    /* SHA-1 of the initial commit. */
+    public String firstCommitId;
+
+    /* Stat cache of the working directory, read in on first use. */
+    private transient Index index;
+
+    /* Graph of all commits, opened on first use. */
+    private transient CommitGraph graph;
 
-    /* Constructs the ArrayList committed with an initial branch name (master);
-     * add the initial commit object to it;
+    /* Index of commit messages, opened on first use. */
+    private transient MessageIndex messages;
+
+    /* Constructs a container with an initial branch name (master)
+     * pointing at the initial commit;
      * modify branchMap and currPointer. */
     public Container(Commit initCommit) {
-        this.firstCommit = initCommit;
-        this.committed = new ArrayList<Commit>();
-        this.committed.add(initCommit);
-        this.branchMap = new HashMap<String, Commit>();
-        this.branchMap.put("master", initCommit);
+        this.firstCommitId = initCommit.id;
+        this.branchMap = new HashMap<String, String>();
+        this.branchMap.put("master", initCommit.id);
         this.currCommit = initCommit;
         this.currBranch = "master";
-        this.commitMap = new HashMap<>();
         this.stagingArea = new HashMap<>();
-        this.shaNameMap = new HashMap<>();
         this.untracked = new HashSet<>();
     }
 
+    /* Constructs an empty container, to be filled in by Codec. */
+    Container() {
+        this.branchMap = new HashMap<>();
+        this.stagingArea = new HashMap<>();
+        this.untracked = new HashSet<>();
+    }
+
+    /* Restores the fields that are not serialized. */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        currCommit = Commit.load(branchMap.get(currBranch));
+    }
+
     /* Returns the current pointer. */
     public Commit getCurrPointer() {
         return currCommit;
     }
 
+    /* Returns the working directory's stat cache. */
+    public Index index() {
+        if (index == null) {
+            index = Index.load();
+        }
+        return index;
+    }
+
+    /* Returns the commit graph. */
+    public CommitGraph graph() {
+        if (graph == null) {
+            graph = CommitGraph.open();
+        }
+        return graph;
+    }
+
+    /* Returns the index of commit messages. */
+    public MessageIndex messages() {
+        if (messages == null) {
+            messages = new MessageIndex(graph());
+        }
+        return messages;
+    }
+
+    /* Forgets the index of commit messages, so that it is opened afresh on next use. */
+    void dropMessages() {
+        messages = null;
+    }
+
+    /* Returns the initial commit. */
+    public Commit firstCommit() {
+        return Commit.load(firstCommitId);
+    }
+
+    /* Returns the head commit of the named branch, or null if there is no such branch. */
+    public Commit branchHead(String name) {
+        return Commit.load(branchMap.get(name));
+    }
+
+    /* Points the current branch at COMMIT and makes it the current commit. */
+    public void moveHead(Commit commit) {
+        currCommit = commit;
+        branchMap.put(currBranch, commit.id);
+    }
+
     /* Returns a list of branches. */
     public Set<String> getBranches() {
         return branchMap.keySet();
     };
 
-    /* Returns the list of committed files represented by SHA. */
-    public ArrayList<Commit> getCommitted() {
-        return committed;
+    /* Returns the ids of every commit ever made, including those no longer on any branch. */
+    public List<String> getCommitted() {
+        return ObjectStore.COMMITS.ids();
     }
 
     /* Returns the map of staged files. */
@@ -77,7 +138,7 @@ public class Container implements Serializable {
 
     /* Add a new branch with specified name. */
     public void addBranch(String name) {
-        branchMap.put(name, branchMap.get(getCurrPointer()));
+        branchMap.put(name, currCommit.id);
     };
 
     /* Removes the specified branch. */
@@ -87,14 +148,14 @@ public class Container implements Serializable {
 
     /* Change to the specified branch. */
     public void changeBranch(String name) {
-        currCommit = branchMap.get(name);
+        currCommit = branchHead(name);
         currBranch = name;
     }
 
     /* [git add] Stage the file. */
     public void stage(File file) {
         if (file != null) {
-            stagingArea.put(file.getName(), Utils.sha1(Utils.readContents(file)));
+            stagingArea.put(file.getName(), Utils.sha1(file));
         }
     }
 
@@ -127,68 +188,26 @@ public class Container implements Serializable {
     public Map<String, String> getTracked() {
         List<Commit> headCommit = new ArrayList();
         for (String s: branchMap.keySet()) {
-            headCommit.add(branchMap.get(s));
+            headCommit.add(branchHead(s));
         }
         Collections.sort(headCommit, (o1, o2) -> o1.getTimeStamp().compareTo(o2.getTimeStamp()));
         Map<String, String> mapF = new HashMap();
         for (Commit com: headCommit) {
-            for (String s: com.filesMap.keySet()) {
-                mapF.put(s, com.filesMap.get(s));
-            }
+            mapF.putAll(com.files());
         }
         return mapF;
     }
 
-    /* Find the split point of two Commit objects,
-     * assuming that the two commit objects are in different
-     * branches and are not necessarily first cousins. */
+    /* Find the split point of two Commit objects: their nearest common
+     * ancestor, found through the commit graph in O(log n) steps. */
     public Commit ancestor(Commit c1, Commit c2) {
-        Commit tempC1 = c1;
-        Commit tempC2 = c2;
-        int count1 = 0;
-        int count2 = 0;
-        while (tempC1.parent != null) {
-            count1 += 1;
-            tempC1 = tempC1.parent;
-        }
-        while (tempC2.parent != null) {
-            count2 += 1;
-            tempC2 = tempC2.parent;
-        }
-        tempC1 = c1;
-        tempC2 = c2;
-        if (count1 < count2) {
-            for (int i = 0; i < count2 - count1; i++) {
-                tempC2 = tempC2.parent;
-            }
-            if (tempC2.id.equals(c1.id)) {
-                return c1;
-            }
-        } else if (count1 > count2) {
-            for (int i = 0; i < count1 - count2; i++) {
-                tempC1 = tempC1.parent;
-            }
-            if (tempC1.id.equals(c2.id)) {
-                return c2;
-            }
-        }
-        while (c1.parent != null) {
-            if (c1.parent.id.equals(c2.parent.id)) {
-                return c1.parent;
-            }
-            c1 = c1.parent;
-            c2 = c2.parent;
-        }
-        return firstCommit;
+        CommitGraph graph = graph();
+        return Commit.load(graph.id(graph.mergeBase(graph.position(c1), graph.position(c2))));
     }
 
     // checks if ancestor is an ancestor of curr
     public boolean isAncestor(Commit curr, Commit ancestor) {
-        while (curr != null) {
-            Commit parent = curr.parent;
-            if (parent != null && parent.id.equals(ancestor.id)) return true;
-            curr = parent;
-        }
-        return false;
+        CommitGraph graph = graph();
+        return graph.isAncestor(graph.position(ancestor), graph.position(curr));
     }
 }
@@ -0,0 +1,271 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/* An optional resident server for one repository, so that a series of
+   commands pays for starting a JVM and loading the container, commit
+   graph and indexes once rather than every time.
+
+   "gitlet daemon [IDLE_SECONDS]", run in the repository's directory,
+   listens on the Unix domain socket .gitlet/daemon.sock until no command
+   has arrived for IDLE_SECONDS (default 600), or until "gitlet daemon
+   stop". While the socket exists, Main hands every command to it instead
+   of running it; if nothing answers, Main runs the command itself.
+
+   A request is the argument count followed by the arguments, as in
+   DataOutputStream.writeUTF. The reply is a series of frames, each a
+   stream number (OUT or ERR), a length and that many bytes of output,
+   ended by a frame with stream number END.
+
+   Commands are run one at a time. The daemon holds an exclusive lock on
+   .gitlet/lock for as long as it runs, and commands run without it take
+   the same lock, so the repository on disk never changes under the
+   state the daemon keeps in memory. */
+class Daemon {
+
+    /* Where the daemon listens. */
+    static final File SOCKET_FILE = new File(Command.GITLETDIR, "daemon.sock");
+
+    /* The file locked by whoever is changing the repository. */
+    static final File LOCK_FILE = new File(Command.GITLETDIR, "lock");
+
+    /* Default time without commands after which the daemon exits. */
+    static final int IDLE_SECONDS = 600;
+
+    /* Frame stream numbers. */
+    private static final int END = 0;
+    private static final int OUT = 1;
+    private static final int ERR = 2;
+
+    /* The repository's refs and staging state, kept between commands. */
+    private Journal journal;
+
+    private Daemon() {
+        journal = Journal.open();
+    }
+
+    /* Handles "daemon [IDLE_SECONDS]" and "daemon stop", given as ARGS. */
+    static void command(String... args) {
+        if (args.length == 2 && args[1].equals("stop")) {
+            if (!forward(args)) {
+                System.out.println("No gitlet daemon is running.");
+            }
+            return;
+        }
+        int idle = IDLE_SECONDS;
+        try {
+            if (args.length == 2) {
+                idle = Integer.parseInt(args[1]);
+            }
+        } catch (NumberFormatException excp) {
+            idle = -1;
+        }
+        if (args.length > 2 || idle <= 0) {
+            throw new IllegalArgumentException("Incorrect operands.");
+        }
+        if (!Command.GITLETDIR.isDirectory()) {
+            throw new IllegalArgumentException("Not in an initialized gitlet directory.");
+        }
+        try (FileChannel lock = lock(false)) {
+            if (lock == null) {
+                throw new IllegalArgumentException("A gitlet daemon is already running.");
+            }
+            new Daemon().serve(TimeUnit.SECONDS.toMillis(idle));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /* Returns a channel holding the repository lock, waiting for it if
+       WAIT, or null if there is no repository or WAIT is false and the
+       lock is held elsewhere. Closing the channel releases the lock. */
+    static FileChannel lock(boolean wait) {
+        if (!Command.GITLETDIR.isDirectory()) {
+            return null;
+        }
+        try {
+            FileChannel channel = FileChannel.open(LOCK_FILE.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            if ((wait ? channel.lock() : channel.tryLock()) == null) {
+                channel.close();
+                return null;
+            }
+            return channel;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /* Runs ARGS on the daemon for this repository, copying its output to
+       System.out and System.err. Returns false if there is no daemon. */
+    static boolean forward(String... args) {
+        if (args.length == 0 || !SOCKET_FILE.exists()) {
+            return false;
+        }
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(UnixDomainSocketAddress.of(SOCKET_FILE.toPath()));
+        } catch (IOException excp) {
+            /* A socket left behind by a daemon that died. */
+            return false;
+        }
+        try (channel) {
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel)));
+            out.writeInt(args.length);
+            for (String arg : args) {
+                out.writeUTF(arg);
+            }
+            out.flush();
+            DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+            byte[] buffer = new byte[Utils.IO_BUFFER_SIZE];
+            for (int stream = in.readByte(); stream != END; stream = in.readByte()) {
+                PrintStream dest = stream == ERR ? System.err : System.out;
+                for (int left = in.readInt(); left > 0; ) {
+                    int n = in.read(buffer, 0, Math.min(left, buffer.length));
+                    if (n < 0) {
+                        throw new IOException("gitlet daemon went away");
+                    }
+                    dest.write(buffer, 0, n);
+                    left -= n;
+                }
+            }
+            return true;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /* Answers requests until IDLE milliseconds pass without one, or one
+       asks the daemon to stop. */
+    private void serve(long idle) throws IOException {
+        Files.deleteIfExists(SOCKET_FILE.toPath());
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+             Selector selector = Selector.open()) {
+            server.bind(UnixDomainSocketAddress.of(SOCKET_FILE.toPath()));
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+            boolean stop = false;
+            while (!stop && selector.select(idle) > 0) {
+                selector.selectedKeys().clear();
+                SocketChannel client = server.accept();
+                if (client != null) {
+                    client.configureBlocking(true);
+                    stop = answer(client);
+                }
+            }
+        } finally {
+            Files.deleteIfExists(SOCKET_FILE.toPath());
+        }
+    }
+
+    /* Runs the command sent on CLIENT and sends back its output. Returns
+       true iff it was "daemon stop". */
+    private boolean answer(SocketChannel client) {
+        PrintStream stdout = System.out, stderr = System.err;
+        try (client) {
+            DataInputStream in = new DataInputStream(Channels.newInputStream(client));
+            String[] args = new String[in.readInt()];
+            for (int i = 0; i < args.length; i += 1) {
+                args[i] = in.readUTF();
+            }
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Channels.newOutputStream(client), Utils.IO_BUFFER_SIZE));
+            PrintStream clientOut = new PrintStream(new BufferedOutputStream(
+                new Frames(out, OUT), Utils.IO_BUFFER_SIZE), false);
+            PrintStream clientErr = new PrintStream(new Frames(out, ERR), true);
+            System.setOut(clientOut);
+            System.setErr(clientErr);
+            boolean stop = args.length > 0 && args[0].equals("daemon");
+            try {
+                if (stop) {
+                    if (args.length != 2 || !args[1].equals("stop")) {
+                        System.out.println("A gitlet daemon is already running.");
+                        stop = false;
+                    }
+                } else {
+                    run(args);
+                }
+            } finally {
+                clientOut.flush();
+                clientErr.flush();
+                out.writeByte(END);
+                out.flush();
+            }
+            return stop;
+        } catch (IOException excp) {
+            /* The client went away; there is nobody to tell. */
+            return false;
+        } finally {
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+    }
+
+    /* Runs the command ARGS against the state in memory, as Main does
+       against the state on disk. */
+    private void run(String... args) {
+        try {
+            Command command = new Command(args);
+            Container container = command.execute(journal.container());
+            if (container != null) {
+                journal.save(container);
+                container.index().save();
+            }
+        } catch (IllegalArgumentException excp) {
+            System.out.println(excp.getMessage());
+            /* Main would exit without saving; drop any partial changes. */
+            journal = Journal.open();
+        } catch (RuntimeException excp) {
+            excp.printStackTrace();
+            journal = Journal.open();
+        }
+    }
+
+    /* Sends everything written to it as frames of one stream. */
+    private static class Frames extends OutputStream {
+        private final DataOutputStream out;
+        private final int stream;
+
+        Frames(DataOutputStream out, int stream) {
+            this.out = out;
+            this.stream = stream;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > 0) {
+                out.writeByte(stream);
+                out.writeInt(len);
+                out.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+    }
+}
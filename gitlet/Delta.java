@@ -0,0 +1,171 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/* Binary deltas: a description of one byte array (the target) in terms of
+   another (the base), as a list of instructions to copy a range of the
+   base or to insert literal bytes.
+
+   A delta starts with the lengths of the base and target as varints, then
+   has instructions: COPY, a varint offset and a varint length; or INSERT,
+   a varint length and that many bytes. To find copies, the base is cut
+   into BLOCK-byte blocks indexed by hash; a rolling hash of every
+   BLOCK-byte window of the target is looked up, and matches are extended
+   forward and backward, much as in git and xdelta. */
+class Delta {
+
+    /* Instruction codes. */
+    private static final int COPY = 0;
+    private static final int INSERT = 1;
+
+    /* Length of the blocks of the base that are indexed. */
+    private static final int BLOCK = 16;
+
+    /* Multiplier of the rolling hash, and its BLOCK-1'th power. */
+    private static final int PRIME = 16777619;
+    private static final int HIGH;
+
+    /* Most candidates tried for one window, bounding time on repetitive inputs. */
+    private static final int MAX_CANDIDATES = 16;
+
+    static {
+        int high = 1;
+        for (int i = 1; i < BLOCK; i += 1) {
+            high *= PRIME;
+        }
+        HIGH = high;
+    }
+
+    /* Returns a delta that turns BASE into TARGET. */
+    static byte[] create(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, base.length);
+        writeVarint(out, target.length);
+        int blocks = base.length / BLOCK;
+        int size = Integer.highestOneBit(Math.max(2, 2 * blocks) - 1) << 1;
+        /* Chains of blocks by hash bucket, most recent block first; -1 ends. */
+        int[] heads = new int[size];
+        int[] next = new int[blocks];
+        Arrays.fill(heads, -1);
+        for (int b = 0; b < blocks; b += 1) {
+            int bucket = hash(base, b * BLOCK) & (size - 1);
+            next[b] = heads[bucket];
+            heads[bucket] = b;
+        }
+        int pending = 0;
+        int i = 0;
+        int h = target.length >= BLOCK ? hash(target, 0) : 0;
+        while (i + BLOCK <= target.length) {
+            int bestOffset = -1, bestLength = 0;
+            int tries = 0;
+            for (int b = blocks == 0 ? -1 : heads[h & (size - 1)]; b >= 0 && tries < MAX_CANDIDATES;
+                 b = next[b], tries += 1) {
+                int offset = b * BLOCK;
+                int length = 0;
+                while (offset + length < base.length && i + length < target.length
+                       && base[offset + length] == target[i + length]) {
+                    length += 1;
+                }
+                if (length > bestLength) {
+                    bestOffset = offset;
+                    bestLength = length;
+                }
+            }
+            if (bestLength >= BLOCK) {
+                int back = 0;
+                while (bestOffset - back > 0 && i - back > pending
+                       && base[bestOffset - back - 1] == target[i - back - 1]) {
+                    back += 1;
+                }
+                insert(out, target, pending, i - back);
+                out.write(COPY);
+                writeVarint(out, bestOffset - back);
+                writeVarint(out, bestLength + back);
+                i += bestLength;
+                pending = i;
+                if (i + BLOCK <= target.length) {
+                    h = hash(target, i);
+                }
+            } else {
+                if (i + BLOCK < target.length) {
+                    h = (h - target[i] * HIGH) * PRIME + target[i + BLOCK];
+                }
+                i += 1;
+            }
+        }
+        insert(out, target, pending, target.length);
+        return out.toByteArray();
+    }
+
+    /* Returns the target described by DELTA against BASE. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = {0};
+        if (readVarint(delta, pos) != base.length) {
+            throw new IllegalArgumentException("delta does not match its base");
+        }
+        byte[] target = new byte[readVarint(delta, pos)];
+        int t = 0;
+        while (pos[0] < delta.length) {
+            int op = delta[pos[0]];
+            pos[0] += 1;
+            if (op == COPY) {
+                int offset = readVarint(delta, pos);
+                int length = readVarint(delta, pos);
+                System.arraycopy(base, offset, target, t, length);
+                t += length;
+            } else if (op == INSERT) {
+                int length = readVarint(delta, pos);
+                System.arraycopy(delta, pos[0], target, t, length);
+                pos[0] += length;
+                t += length;
+            } else {
+                throw new IllegalArgumentException("corrupt delta");
+            }
+        }
+        if (t != target.length) {
+            throw new IllegalArgumentException("corrupt delta");
+        }
+        return target;
+    }
+
+    /* Returns the hash of the BLOCK bytes of DATA at OFFSET. */
+    private static int hash(byte[] data, int offset) {
+        int h = 0;
+        for (int k = offset; k < offset + BLOCK; k += 1) {
+            h = h * PRIME + data[k];
+        }
+        return h;
+    }
+
+    /* Writes an INSERT of TARGET[FROM..TO), if that is not empty. */
+    private static void insert(ByteArrayOutputStream out, byte[] target, int from, int to) {
+        if (from < to) {
+            out.write(INSERT);
+            writeVarint(out, to - from);
+            out.write(target, from, to - from);
+        }
+    }
+
+    /* Writes the non-negative N, seven bits a byte, low bits first. */
+    static void writeVarint(ByteArrayOutputStream out, int n) {
+        while (n >= 0x80) {
+            out.write((n & 0x7f) | 0x80);
+            n >>>= 7;
+        }
+        out.write(n);
+    }
+
+    /* Reads a varint from DATA at POS[0], advancing it. */
+    static int readVarint(byte[] data, int[] pos) {
+        int n = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = data[pos[0]];
+            pos[0] += 1;
+            n |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return n;
+            }
+        }
+    }
+}
@@ -0,0 +1,441 @@
+package gitlet;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/* The line differences between two texts, found with Myers' O(ND)
+   algorithm in its linear-space form (dividing at the middle snake).
+
+   Lines are never copied out of the texts: each text is indexed by the
+   offsets at which its lines start, and every distinct line is numbered
+   once, by hash and then by comparing bytes, so the algorithm itself
+   compares ints. Lines that occur only in one text must be changed in any
+   edit script, so they are set aside before the search; the difference
+   between two unrelated files then costs one pass. Where the edit
+   distance of a stretch passes COST_MIN or the square root of its
+   length, whichever is larger, the search settles for the furthest
+   point it has reached rather than the true middle, as GNU diff and
+   xdiff do, which bounds the time on pathological inputs at the price
+   of a diff that may not be minimal there. */
+class Diff {
+
+    /* Lines of unchanged context shown around each change. */
+    static final int CONTEXT = 3;
+
+    /* Smallest edit distance at which the search may give up on minimality. */
+    private static final int COST_MIN = 256;
+
+    /* Number of leading bytes searched for a NUL when deciding a text is binary. */
+    private static final int BINARY_PROBE = 8000;
+
+    /* The two texts. */
+    final Lines a, b;
+
+    /* Whether each line of A is deleted and each line of B inserted. The
+       remaining lines of A and B correspond in order. */
+    final boolean[] deleted, inserted;
+
+    /* Reduced sequences of line numbers searched by Myers' algorithm,
+       their changes, and the furthest-reaching paths on each diagonal. */
+    private int[] x, y;
+    private boolean[] changedX, changedY;
+    private int[] forward, backward;
+    private int offset;
+    private int costLimit;
+    private int splitX, splitY;
+
+    Diff(byte[] textA, byte[] textB) {
+        a = new Lines(textA);
+        b = new Lines(textB);
+        deleted = new boolean[a.count];
+        inserted = new boolean[b.count];
+        compare();
+    }
+
+    /* Returns true iff the two texts have the same lines. */
+    boolean isEmpty() {
+        for (boolean d : deleted) {
+            if (d) {
+                return false;
+            }
+        }
+        for (boolean i : inserted) {
+            if (i) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* Returns true iff TEXT looks binary: it has a NUL near the start. */
+    static boolean binary(byte[] text) {
+        for (int i = 0, n = Math.min(text.length, BINARY_PROBE); i < n; i += 1) {
+            if (text[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /* A text and the offsets of its lines. Line I runs from start[I] up to
+       start[I + 1], including its newline if it has one; only the last
+       line can lack one. */
+    static final class Lines {
+        final byte[] text;
+        final int[] start;
+        final int count;
+
+        Lines(byte[] text) {
+            this.text = text;
+            int n = 0;
+            for (byte c : text) {
+                if (c == '\n') {
+                    n += 1;
+                }
+            }
+            if (text.length > 0 && text[text.length - 1] != '\n') {
+                n += 1;
+            }
+            count = n;
+            start = new int[n + 1];
+            for (int i = 0, line = 1; i < text.length; i += 1) {
+                if (text[i] == '\n' && line < n) {
+                    start[line] = i + 1;
+                    line += 1;
+                }
+            }
+            start[n] = text.length;
+        }
+
+        /* Returns the hash of line I. */
+        int hash(int i) {
+            int h = 0;
+            for (int k = start[i], end = start[i + 1]; k < end; k += 1) {
+                h = 31 * h + text[k];
+            }
+            return h;
+        }
+
+        /* Returns true iff line I equals line J of OTHER. */
+        boolean same(int i, Lines other, int j) {
+            return Arrays.equals(text, start[i], start[i + 1],
+                                 other.text, other.start[j], other.start[j + 1]);
+        }
+
+        /* Writes line I to OUT after PREFIX, noting a missing final newline. */
+        void write(PrintStream out, char prefix, int i) {
+            out.print(prefix);
+            out.write(text, start[i], start[i + 1] - start[i]);
+            if (text[start[i + 1] - 1] != '\n') {
+                out.print("\n\\ No newline at end of file\n");
+            }
+        }
+    }
+
+    /* Returns the runs of changed lines in order, each as {first line of A,
+       end in A, first line of B, end in B}; the lines of A in the run are
+       replaced by those of B. */
+    List<int[]> changes() {
+        List<int[]> changes = new ArrayList<>();
+        for (int i = 0, j = 0; i < a.count || j < b.count; ) {
+            if ((i < a.count && deleted[i]) || (j < b.count && inserted[j])) {
+                int i0 = i, j0 = j;
+                while (i < a.count && deleted[i]) {
+                    i += 1;
+                }
+                while (j < b.count && inserted[j]) {
+                    j += 1;
+                }
+                changes.add(new int[] {i0, i, j0, j});
+            } else {
+                i += 1;
+                j += 1;
+            }
+        }
+        return changes;
+    }
+
+    /* Writes the differences as a unified diff with CONTEXT lines of context,
+       headed by "--- NAMEA" and "+++ NAMEB". Writes nothing if there are none. */
+    void writeUnified(PrintStream out, String nameA, String nameB) {
+        List<int[]> changes = changes();
+        if (changes.isEmpty()) {
+            return;
+        }
+        out.println("--- " + nameA);
+        out.println("+++ " + nameB);
+        for (int first = 0; first < changes.size(); ) {
+            int last = first;
+            while (last + 1 < changes.size()
+                   && changes.get(last + 1)[0] - changes.get(last)[1] <= 2 * CONTEXT) {
+                last += 1;
+            }
+            int[] head = changes.get(first), tail = changes.get(last);
+            int startA = Math.max(0, head[0] - CONTEXT);
+            int startB = head[2] - (head[0] - startA);
+            int endA = Math.min(a.count, tail[1] + CONTEXT);
+            int endB = tail[3] + (endA - tail[1]);
+            out.println("@@ -" + range(startA, endA - startA)
+                        + " +" + range(startB, endB - startB) + " @@");
+            int i = startA;
+            for (int k = first; k <= last; k += 1) {
+                int[] change = changes.get(k);
+                for (; i < change[0]; i += 1) {
+                    a.write(out, ' ', i);
+                }
+                for (; i < change[1]; i += 1) {
+                    a.write(out, '-', i);
+                }
+                for (int j = change[2]; j < change[3]; j += 1) {
+                    b.write(out, '+', j);
+                }
+            }
+            for (; i < endA; i += 1) {
+                a.write(out, ' ', i);
+            }
+            first = last + 1;
+        }
+    }
+
+    /* Returns a hunk range in unified format: the first line (or, for an
+       empty range, the line before it) and the length, omitted if 1. */
+    private static String range(int start, int length) {
+        if (length == 1) {
+            return Integer.toString(start + 1);
+        }
+        return (length == 0 ? start : start + 1) + "," + length;
+    }
+
+    /* Fills in DELETED and INSERTED. */
+    private void compare() {
+        int[] codesA = new int[a.count], codesB = new int[b.count];
+        int classes = number(codesA, codesB);
+        int[] inA = new int[classes], inB = new int[classes];
+        for (int code : codesA) {
+            inA[code] += 1;
+        }
+        for (int code : codesB) {
+            inB[code] += 1;
+        }
+        int[] keptA = keep(codesA, inB, deleted);
+        int[] keptB = keep(codesB, inA, inserted);
+        x = new int[keptA.length];
+        y = new int[keptB.length];
+        for (int i = 0; i < x.length; i += 1) {
+            x[i] = codesA[keptA[i]];
+        }
+        for (int j = 0; j < y.length; j += 1) {
+            y[j] = codesB[keptB[j]];
+        }
+        changedX = new boolean[x.length];
+        changedY = new boolean[y.length];
+        offset = y.length + 1;
+        forward = new int[x.length + y.length + 3];
+        backward = new int[x.length + y.length + 3];
+        costLimit = Math.max(COST_MIN, (int) Math.sqrt(x.length + y.length));
+        compareSeq(0, x.length, 0, y.length);
+        for (int i = 0; i < x.length; i += 1) {
+            deleted[keptA[i]] = changedX[i];
+        }
+        for (int j = 0; j < y.length; j += 1) {
+            inserted[keptB[j]] = changedY[j];
+        }
+    }
+
+    /* Sets CODESA and CODESB to a number for each line of A and B, the same
+       for equal lines, and returns how many numbers were used. */
+    private int number(int[] codesA, int[] codesB) {
+        int size = Integer.highestOneBit(Math.max(4, 2 * (a.count + b.count)) - 1) << 1;
+        int[] hashes = new int[size];
+        /* The first line with each number, as line + 1 in A or -(line + 1) in B; 0 if free. */
+        int[] firsts = new int[size];
+        int[] codes = new int[size];
+        int classes = 0;
+        for (int side = 0; side < 2; side += 1) {
+            Lines lines = side == 0 ? a : b;
+            int[] result = side == 0 ? codesA : codesB;
+            for (int i = 0; i < lines.count; i += 1) {
+                int hash = lines.hash(i);
+                int slot = (hash ^ (hash >>> 16)) & (size - 1);
+                while (true) {
+                    int first = firsts[slot];
+                    if (first == 0) {
+                        hashes[slot] = hash;
+                        firsts[slot] = side == 0 ? i + 1 : -(i + 1);
+                        codes[slot] = classes;
+                        result[i] = classes;
+                        classes += 1;
+                        break;
+                    }
+                    if (hashes[slot] == hash
+                        && (first > 0 ? lines.same(i, a, first - 1) : lines.same(i, b, -first - 1))) {
+                        result[i] = codes[slot];
+                        break;
+                    }
+                    slot = (slot + 1) & (size - 1);
+                }
+            }
+        }
+        return classes;
+    }
+
+    /* Marks in CHANGED the lines with CODES whose count in OTHER is 0, and
+       returns the indices of the rest. */
+    private static int[] keep(int[] codes, int[] other, boolean[] changed) {
+        int[] kept = new int[codes.length];
+        int n = 0;
+        for (int i = 0; i < codes.length; i += 1) {
+            if (other[codes[i]] == 0) {
+                changed[i] = true;
+            } else {
+                kept[n] = i;
+                n += 1;
+            }
+        }
+        return Arrays.copyOf(kept, n);
+    }
+
+    /* Marks the changes that turn X[XOFF..XLIM) into Y[YOFF..YLIM). */
+    private void compareSeq(int xoff, int xlim, int yoff, int ylim) {
+        while (true) {
+            while (xoff < xlim && yoff < ylim && x[xoff] == y[yoff]) {
+                xoff += 1;
+                yoff += 1;
+            }
+            while (xoff < xlim && yoff < ylim && x[xlim - 1] == y[ylim - 1]) {
+                xlim -= 1;
+                ylim -= 1;
+            }
+            if (xoff == xlim || yoff == ylim) {
+                Arrays.fill(changedX, xoff, xlim, true);
+                Arrays.fill(changedY, yoff, ylim, true);
+                return;
+            }
+            split(xoff, xlim, yoff, ylim);
+            int xmid = splitX, ymid = splitY;
+            if ((xmid == xoff && ymid == yoff) || (xmid == xlim && ymid == ylim)) {
+                /* No progress; cannot happen, but never loop forever. */
+                Arrays.fill(changedX, xoff, xlim, true);
+                Arrays.fill(changedY, yoff, ylim, true);
+                return;
+            }
+            compareSeq(xoff, xmid, yoff, ymid);
+            xoff = xmid;
+            yoff = ymid;
+        }
+    }
+
+    /* Sets SPLITX and SPLITY to a point on a shortest edit path between
+       X[XOFF..XLIM) and Y[YOFF..YLIM) about halfway along it, or, once the
+       edit distance passes COSTLIMIT, to the point furthest along that
+       either search has reached. Diagonal K (x - y) is at index K + OFFSET. */
+    private void split(int xoff, int xlim, int yoff, int ylim) {
+        int dmin = xoff - ylim, dmax = xlim - yoff;
+        int fmid = xoff - yoff, bmid = xlim - ylim;
+        int fmin = fmid, fmax = fmid, bmin = bmid, bmax = bmid;
+        boolean odd = ((fmid - bmid) & 1) != 0;
+        forward[fmid + offset] = xoff;
+        backward[bmid + offset] = xlim;
+        for (int cost = 1; ; cost += 1) {
+            if (fmin > dmin) {
+                fmin -= 1;
+                forward[fmin - 1 + offset] = -1;
+            } else {
+                fmin += 1;
+            }
+            if (fmax < dmax) {
+                fmax += 1;
+                forward[fmax + 1 + offset] = -1;
+            } else {
+                fmax -= 1;
+            }
+            for (int d = fmax; d >= fmin; d -= 2) {
+                int lo = forward[d - 1 + offset], hi = forward[d + 1 + offset];
+                int i = lo >= hi ? lo + 1 : hi;
+                int j = i - d;
+                while (i < xlim && j < ylim && x[i] == y[j]) {
+                    i += 1;
+                    j += 1;
+                }
+                forward[d + offset] = i;
+                if (odd && bmin <= d && d <= bmax && backward[d + offset] <= i) {
+                    splitX = i;
+                    splitY = j;
+                    return;
+                }
+            }
+            if (bmin > dmin) {
+                bmin -= 1;
+                backward[bmin - 1 + offset] = Integer.MAX_VALUE;
+            } else {
+                bmin += 1;
+            }
+            if (bmax < dmax) {
+                bmax += 1;
+                backward[bmax + 1 + offset] = Integer.MAX_VALUE;
+            } else {
+                bmax -= 1;
+            }
+            for (int d = bmax; d >= bmin; d -= 2) {
+                int lo = backward[d - 1 + offset], hi = backward[d + 1 + offset];
+                int i = lo < hi ? lo : hi - 1;
+                int j = i - d;
+                while (i > xoff && j > yoff && x[i - 1] == y[j - 1]) {
+                    i -= 1;
+                    j -= 1;
+                }
+                backward[d + offset] = i;
+                if (!odd && fmin <= d && d <= fmax && i <= forward[d + offset]) {
+                    splitX = i;
+                    splitY = j;
+                    return;
+                }
+            }
+            if (cost >= costLimit) {
+                giveUp(xoff, xlim, yoff, ylim, fmin, fmax, bmin, bmax);
+                return;
+            }
+        }
+    }
+
+    /* Sets SPLITX and SPLITY to whichever of the furthest forward and
+       furthest backward points has come further from its end. */
+    private void giveUp(int xoff, int xlim, int yoff, int ylim,
+                        int fmin, int fmax, int bmin, int bmax) {
+        int fbest = -1, fbestX = xoff;
+        for (int d = fmax; d >= fmin; d -= 2) {
+            int i = Math.min(forward[d + offset], xlim);
+            int j = i - d;
+            if (j > ylim) {
+                i = ylim + d;
+                j = ylim;
+            }
+            if (i + j > fbest) {
+                fbest = i + j;
+                fbestX = i;
+            }
+        }
+        int bbest = Integer.MAX_VALUE, bbestX = xlim;
+        for (int d = bmax; d >= bmin; d -= 2) {
+            int i = Math.max(xoff, backward[d + offset]);
+            int j = i - d;
+            if (j < yoff) {
+                i = yoff + d;
+                j = yoff;
+            }
+            if (i + j < bbest) {
+                bbest = i + j;
+                bbestX = i;
+            }
+        }
+        if ((xlim + ylim) - bbest < fbest - (xoff + yoff)) {
+            splitX = fbestX;
+            splitY = fbest - fbestX;
+        } else {
+            splitX = bbestX;
+            splitY = bbest - bbestX;
+        }
+    }
+}
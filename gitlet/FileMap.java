@@ -0,0 +1,319 @@
+package gitlet;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/* An immutable map from file paths to blob ids that shares structure
+   with the maps it was derived from: a hash array mapped trie. Each node
+   covers 5 bits of the key's hash and holds, for each occupied slot,
+   either one entry or a child node. Changing k entries of a map of n
+   copies only the O(k log n) nodes on their paths; everything else is
+   shared, so the file maps of a run of commits cost little more than
+   one of them.
+
+   The shape of the trie depends only on its contents (a child left
+   holding a single entry is folded back into its parent), so two maps
+   are equal exactly when their tries are, and comparing two maps stops
+   at every node they share.
+
+   The Map methods that change a map throw UnsupportedOperationException;
+   plus and minus return changed copies instead. */
+final class FileMap extends AbstractMap<String, String> {
+
+    /* The empty map. */
+    static final FileMap EMPTY = new FileMap(null, 0);
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    /* Shift at which the hash is used up and collisions are listed. */
+    private static final int MAX_SHIFT = 30;
+
+    /* A trie node. For each set bit of BITMAP, ordered by bit, ENTRIES
+       holds a key and value, or null and a child Node. A node at
+       MAX_SHIFT or beyond has no bitmap and lists its entries in order. */
+    private static final class Node {
+        final int bitmap;
+        final Object[] entries;
+
+        Node(int bitmap, Object[] entries) {
+            this.bitmap = bitmap;
+            this.entries = entries;
+        }
+    }
+
+    private final Node root;
+    private final int size;
+
+    private FileMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /* Returns a map with the entries of FILES. */
+    static FileMap of(Map<String, String> files) {
+        if (files instanceof FileMap) {
+            return (FileMap) files;
+        }
+        return EMPTY.plusAll(files);
+    }
+
+    /* Returns this map with KEY mapped to VALUE. */
+    FileMap plus(String key, String value) {
+        int[] added = new int[1];
+        Node node = plus(root, key, value, key.hashCode(), 0, added);
+        return node == root ? this : new FileMap(node, size + added[0]);
+    }
+
+    /* Returns this map without KEY. */
+    FileMap minus(String key) {
+        if (!containsKey(key)) {
+            return this;
+        }
+        Node node = minus(root, key, key.hashCode(), 0);
+        return new FileMap(node, size - 1);
+    }
+
+    /* Returns this map with each key of CHANGES mapped to its value, or
+       removed where the value is null. */
+    FileMap plusAll(Map<String, String> changes) {
+        FileMap result = this;
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            result = change.getValue() == null ? result.minus(change.getKey())
+                : result.plus(change.getKey(), change.getValue());
+        }
+        return result;
+    }
+
+    @Override
+    public String get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        int hash = key.hashCode();
+        Node node = root;
+        for (int shift = 0; node != null; shift += BITS) {
+            if (shift >= MAX_SHIFT) {
+                for (int i = 0; i < node.entries.length; i += 2) {
+                    if (key.equals(node.entries[i])) {
+                        return (String) node.entries[i + 1];
+                    }
+                }
+                return null;
+            }
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+            int i = 2 * Integer.bitCount(node.bitmap & (bit - 1));
+            if (node.entries[i] != null) {
+                return key.equals(node.entries[i]) ? (String) node.entries[i + 1] : null;
+            }
+            node = (Node) node.entries[i + 1];
+        }
+        return null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                List<Map.Entry<String, String>> all = new ArrayList<>(size);
+                FileMap.this.forEach((k, v) -> all.add(new SimpleImmutableEntry<>(k, v)));
+                return all.iterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super String, ? super String> action) {
+        forEach(root, action);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (other instanceof FileMap) {
+            FileMap map = (FileMap) other;
+            return size == map.size && same(root, map.root);
+        }
+        return super.equals(other);
+    }
+
+    @Override
+    public int hashCode() {
+        return super.hashCode();
+    }
+
+    private static Node plus(Node node, String key, String value, int hash, int shift,
+                             int[] added) {
+        if (node == null) {
+            added[0] = 1;
+            return shift >= MAX_SHIFT ? new Node(0, new Object[] {key, value})
+                : new Node(bit(hash, shift), new Object[] {key, value});
+        }
+        if (shift >= MAX_SHIFT) {
+            for (int i = 0; i < node.entries.length; i += 2) {
+                if (key.equals(node.entries[i])) {
+                    if (value.equals(node.entries[i + 1])) {
+                        return node;
+                    }
+                    Object[] entries = node.entries.clone();
+                    entries[i + 1] = value;
+                    return new Node(0, entries);
+                }
+            }
+            added[0] = 1;
+            Object[] entries = Arrays.copyOf(node.entries, node.entries.length + 2);
+            entries[node.entries.length] = key;
+            entries[node.entries.length + 1] = value;
+            return new Node(0, entries);
+        }
+        int bit = bit(hash, shift);
+        int i = 2 * Integer.bitCount(node.bitmap & (bit - 1));
+        if ((node.bitmap & bit) == 0) {
+            added[0] = 1;
+            Object[] entries = new Object[node.entries.length + 2];
+            System.arraycopy(node.entries, 0, entries, 0, i);
+            entries[i] = key;
+            entries[i + 1] = value;
+            System.arraycopy(node.entries, i, entries, i + 2, node.entries.length - i);
+            return new Node(node.bitmap | bit, entries);
+        }
+        Object[] entries = node.entries.clone();
+        if (entries[i] == null) {
+            Node child = plus((Node) entries[i + 1], key, value, hash, shift + BITS, added);
+            if (child == entries[i + 1]) {
+                return node;
+            }
+            entries[i + 1] = child;
+        } else if (key.equals(entries[i])) {
+            if (value.equals(entries[i + 1])) {
+                return node;
+            }
+            entries[i + 1] = value;
+        } else {
+            /* Push the resident entry down a level next to the new one. */
+            String other = (String) entries[i];
+            Node child = plus(null, other, (String) entries[i + 1], other.hashCode(),
+                              shift + BITS, new int[1]);
+            entries[i] = null;
+            entries[i + 1] = plus(child, key, value, hash, shift + BITS, added);
+        }
+        return new Node(node.bitmap, entries);
+    }
+
+    /* Returns NODE without KEY, which must be present, or null if that
+       leaves it empty. */
+    private static Node minus(Node node, String key, int hash, int shift) {
+        if (shift >= MAX_SHIFT) {
+            if (node.entries.length == 2) {
+                return null;
+            }
+            Object[] entries = new Object[node.entries.length - 2];
+            for (int i = 0, j = 0; i < node.entries.length; i += 2) {
+                if (!key.equals(node.entries[i])) {
+                    entries[j++] = node.entries[i];
+                    entries[j++] = node.entries[i + 1];
+                }
+            }
+            return new Node(0, entries);
+        }
+        int bit = bit(hash, shift);
+        int i = 2 * Integer.bitCount(node.bitmap & (bit - 1));
+        if (node.entries[i] == null) {
+            Node child = minus((Node) node.entries[i + 1], key, hash, shift + BITS);
+            Object[] entries = node.entries.clone();
+            if (child != null && child.entries.length == 2 && child.entries[0] != null) {
+                /* Fold a lone entry back up, keeping the shape canonical. */
+                entries[i] = child.entries[0];
+                entries[i + 1] = child.entries[1];
+            } else if (child != null) {
+                entries[i + 1] = child;
+            } else {
+                return without(node, bit, i);
+            }
+            return new Node(node.bitmap, entries);
+        }
+        return without(node, bit, i);
+    }
+
+    /* Returns NODE without the slot BIT at index I, or null if that leaves
+       it empty. */
+    private static Node without(Node node, int bit, int i) {
+        if (node.bitmap == bit) {
+            return null;
+        }
+        Object[] entries = new Object[node.entries.length - 2];
+        System.arraycopy(node.entries, 0, entries, 0, i);
+        System.arraycopy(node.entries, i + 2, entries, i, node.entries.length - i - 2);
+        return new Node(node.bitmap & ~bit, entries);
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    private static void forEach(Node node, BiConsumer<? super String, ? super String> action) {
+        if (node == null) {
+            return;
+        }
+        for (int i = 0; i < node.entries.length; i += 2) {
+            if (node.entries[i] != null) {
+                action.accept((String) node.entries[i], (String) node.entries[i + 1]);
+            } else {
+                forEach((Node) node.entries[i + 1], action);
+            }
+        }
+    }
+
+    /* Returns true iff the tries A and B hold the same entries. */
+    private static boolean same(Node a, Node b) {
+        if (a == b) {
+            return true;
+        }
+        if (a == null || b == null || a.bitmap != b.bitmap
+            || a.entries.length != b.entries.length) {
+            return false;
+        }
+        if (a.bitmap == 0) {
+            /* Collision lists may be in any order. */
+            Map<String, String> entries = new HashMap<>();
+            forEach(a, entries::put);
+            Map<String, String> others = new HashMap<>();
+            forEach(b, others::put);
+            return entries.equals(others);
+        }
+        for (int i = 0; i < a.entries.length; i += 2) {
+            if (a.entries[i] == null ? b.entries[i] != null || !same(
+                    (Node) a.entries[i + 1], (Node) b.entries[i + 1])
+                : !a.entries[i].equals(b.entries[i])
+                  || !a.entries[i + 1].equals(b.entries[i + 1])) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
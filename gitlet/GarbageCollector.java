@@ -0,0 +1,164 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/* "gitlet gc [--grace SECONDS]": deletes the commits, trees and blobs that
+   nothing can reach any more, such as those left by rm-branch and reset.
+
+   The mark phase starts from the head of every branch, the staged files,
+   and any object written less than SECONDS ago (default 0), which is
+   kept with everything it reaches. Commits are marked by walking parent
+   positions in the commit graph; the trees of the marked commits are then
+   read on the worker pool a level at a time, never entering a tree twice,
+   so a subtree shared by many commits is read once. The sweep deletes
+   every unmarked object, and temporary files left by interrupted writes,
+   also on the worker pool. Only loose objects are swept: repack leaves
+   the objects it finds unreachable loose, so one repack and then a gc
+   remove them from a packed repository. If any commit went, the commit graph is
+   rewritten without it, and the id and message indexes, whose entries are
+   graph positions, are rebuilt. */
+class GarbageCollector {
+
+    /* The repository. */
+    private final Container container;
+
+    /* Objects last modified at or after this time (in milliseconds) are
+       kept whether or not they can be reached. */
+    private final long cutoff;
+
+    /* Graph positions of the commits to keep. */
+    private final BitSet commits = new BitSet();
+
+    /* Ids of the commits, trees and blobs to keep. */
+    private final Set<String> commitIds = ConcurrentHashMap.newKeySet();
+    private final Set<String> trees = ConcurrentHashMap.newKeySet();
+    private final Set<String> blobs = ConcurrentHashMap.newKeySet();
+
+    /* Counts of objects and bytes removed, by kind. */
+    private int commitsRemoved, treesRemoved, blobsRemoved;
+    private long bytesFreed;
+
+    GarbageCollector(Container container, long graceMillis) {
+        this.container = container;
+        this.cutoff = System.currentTimeMillis() - graceMillis;
+    }
+
+    /* Collects garbage and prints what was removed. */
+    void run() {
+        mark();
+        commitsRemoved = sweep(ObjectStore.COMMITS, commitIds);
+        treesRemoved = sweep(ObjectStore.TREES, trees);
+        blobsRemoved = sweep(ObjectStore.BLOBS, blobs);
+        for (ObjectStore store : new ObjectStore[] {
+                ObjectStore.COMMITS, ObjectStore.TREES, ObjectStore.BLOBS}) {
+            for (File temp : store.temporaries()) {
+                long length = temp.length();
+                if (temp.lastModified() < cutoff && temp.delete()) {
+                    bytesFreed += length;
+                }
+            }
+        }
+        if (commitsRemoved > 0) {
+            compact();
+        }
+        System.out.println("Removed " + commitsRemoved + " commits, " + treesRemoved
+                           + " trees and " + blobsRemoved + " blobs; freed "
+                           + bytesFreed + " bytes.");
+    }
+
+    /* Marks every object to keep. */
+    private void mark() {
+        CommitGraph graph = container.graph();
+        List<String> roots = new ArrayList<>(container.branchMap.values());
+        for (String id : ObjectStore.COMMITS.ids()) {
+            if (recent(ObjectStore.COMMITS, id)) {
+                roots.add(id);
+            }
+        }
+        for (String id : roots) {
+            Commit commit = Commit.load(id);
+            if (commit == null) {
+                continue;
+            }
+            for (int pos = graph.position(commit); pos >= 0 && !commits.get(pos);
+                 pos = graph.parent(pos)) {
+                commits.set(pos);
+            }
+        }
+        List<Integer> positions = new ArrayList<>(commits.cardinality());
+        commits.stream().forEach(positions::add);
+        List<String> level = Workers.map(positions, pos -> {
+            Commit commit = Commit.read(graph.id(pos));
+            commitIds.add(commit.id);
+            if (commit.treeId == null) {
+                blobs.addAll(commit.filesMap.values());
+            }
+            return commit.treeId;
+        });
+        blobs.addAll(container.stagingArea.values());
+        while (!level.isEmpty()) {
+            List<String> fresh = new ArrayList<>();
+            for (String id : level) {
+                if (id != null && trees.add(id)) {
+                    fresh.add(id);
+                }
+            }
+            level = new ArrayList<>();
+            for (List<String> children : Workers.map(fresh, this::markTree)) {
+                level.addAll(children);
+            }
+        }
+    }
+
+    /* Marks the blobs of the tree ID and returns the ids of its subtrees. */
+    private List<String> markTree(String id) {
+        Tree tree = Codec.decodeTree(ObjectStore.TREES.get(id));
+        blobs.addAll(tree.blobs.values());
+        return new ArrayList<>(tree.trees.values());
+    }
+
+    /* Returns true iff the object ID in STORE was written after the cutoff.
+       A packed object has no file of its own, and is never recent. */
+    private boolean recent(ObjectStore store, String id) {
+        return store.file(id).lastModified() >= cutoff;
+    }
+
+    /* Deletes the objects of STORE that are neither in KEEP nor recent, and
+       returns how many there were. */
+    private int sweep(ObjectStore store, Set<String> keep) {
+        List<String> dead = new ArrayList<>();
+        for (String id : store.looseIds()) {
+            if (!keep.contains(id) && !recent(store, id)) {
+                dead.add(id);
+            }
+        }
+        for (long freed : Workers.map(dead, store::remove)) {
+            bytesFreed += freed;
+        }
+        return dead.size();
+    }
+
+    /* Drops the removed commits from the commit graph and rebuilds the
+       indexes of graph positions. */
+    private void compact() {
+        container.graph().retain(commits);
+        delete(MessageIndex.DIR);
+        container.dropMessages();
+        container.messages().update();
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
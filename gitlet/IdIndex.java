@@ -0,0 +1,231 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/* A sorted index from commit ids to commit-graph positions, used to look
+   up full ids and to resolve abbreviated ones in O(log n).
+
+   .gitlet/commit-ids holds a header (magic, version, and the number of
+   graph positions it covers), a 256-entry fan-out table giving, for each
+   first id byte, how many ids sort before the next byte value, and then
+   24-byte records (raw id, graph position) sorted by id. The file is
+   memory-mapped. Commits added to the graph since the file was written
+   form a short unsorted tail that is scanned directly; once the tail
+   outgrows TAIL_LIMIT it is merged in and the file rewritten, so the
+   rewrite cost is spread over many commits. */
+class IdIndex {
+
+    /* Where the index lives. */
+    static final File INDEX_FILE = new File(Command.GITLETDIR, "commit-ids");
+
+    private static final int MAGIC = 0x474c4944;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12 + 256 * 4;
+    private static final int RECORD_SIZE = 24;
+
+    /* Longest unsorted tail tolerated before the file is rewritten. */
+    static final int TAIL_LIMIT = 64;
+
+    /* The graph whose positions this indexes. */
+    private final CommitGraph graph;
+
+    /* The mapped sorted records. */
+    private ByteBuffer records;
+
+    /* Fan-out table: FANOUT[b] is the number of records whose first byte
+       is at most b. */
+    private final int[] fanout = new int[256];
+
+    /* Number of sorted records, i.e. graph positions 0 .. covered-1. */
+    private int covered;
+
+    IdIndex(CommitGraph graph) {
+        this.graph = graph;
+        map();
+        if (covered > graph.size()) {
+            /* The graph was rewritten underneath us; start over. */
+            covered = 0;
+            records = ByteBuffer.allocate(0);
+            Arrays.fill(fanout, 0);
+        }
+    }
+
+    /* Returns the graph position of the commit whose full id is ID, or -1. */
+    int position(String id) {
+        if (id.length() != 40) {
+            return -1;
+        }
+        List<Integer> found = matches(id, 1);
+        return found.isEmpty() ? -1 : found.get(0);
+    }
+
+    /* Returns the graph positions of up to LIMIT commits whose ids start with
+       the hex string PREFIX, in no particular order. */
+    List<Integer> matches(String prefix, int limit) {
+        List<Integer> result = new ArrayList<>();
+        int[] nibbles = new int[prefix.length()];
+        for (int i = 0; i < nibbles.length; i += 1) {
+            nibbles[i] = Character.digit(prefix.charAt(i), 16);
+            if (nibbles[i] < 0) {
+                return result;
+            }
+        }
+        int lo = 0, hi = covered;
+        if (nibbles.length >= 2) {
+            int first = (nibbles[0] << 4) | nibbles[1];
+            lo = first == 0 ? 0 : fanout[first - 1];
+            hi = fanout[first];
+        }
+        /* Find the first record not less than PREFIX. */
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(mid * RECORD_SIZE, nibbles) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int i = lo; i < covered && result.size() < limit
+                 && compare(i * RECORD_SIZE, nibbles) == 0; i += 1) {
+            result.add(records.getInt(i * RECORD_SIZE + 20));
+        }
+        String lower = prefix.toLowerCase();
+        for (int pos = covered; pos < graph.size() && result.size() < limit; pos += 1) {
+            if (graph.id(pos).startsWith(lower)) {
+                result.add(pos);
+            }
+        }
+        return result;
+    }
+
+    /* Merges the unsorted tail into the file once it is longer than
+       TAIL_LIMIT. */
+    void refresh() {
+        if (graph.size() - covered > TAIL_LIMIT) {
+            rewrite();
+        }
+    }
+
+    /* Compares the first NIBBLES.length hex digits of the id in the record
+       at OFFSET with NIBBLES. */
+    private int compare(int offset, int[] nibbles) {
+        for (int i = 0; i < nibbles.length && i < 40; i += 1) {
+            int b = records.get(offset + i / 2) & 0xff;
+            int nibble = i % 2 == 0 ? b >>> 4 : b & 0xf;
+            if (nibble != nibbles[i]) {
+                return nibble - nibbles[i];
+            }
+        }
+        return 0;
+    }
+
+    /* Rewrites the file to cover the whole graph. */
+    private void rewrite() {
+        int total = graph.size();
+        Integer[] tail = new Integer[total - covered];
+        byte[][] tailIds = new byte[total][];
+        for (int pos = covered; pos < total; pos += 1) {
+            tail[pos - covered] = pos;
+            tailIds[pos] = Utils.fromHex(graph.id(pos));
+        }
+        Arrays.sort(tail, Comparator.comparing(pos -> tailIds[pos], Arrays::compareUnsigned));
+        int[] counts = new int[256];
+        try {
+            File temp = File.createTempFile("commit-ids-", null, Command.GITLETDIR);
+            try (DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(total);
+                /* Reserve the fan-out table; it is filled in below. */
+                out.write(new byte[256 * 4]);
+                byte[] id = new byte[20];
+                int i = 0, j = 0;
+                while (i < covered || j < tail.length) {
+                    boolean fromOld = j == tail.length;
+                    if (!fromOld && i < covered) {
+                        records.duplicate().position(i * RECORD_SIZE).get(id);
+                        fromOld = Arrays.compareUnsigned(id, tailIds[tail[j]]) < 0;
+                    }
+                    byte[] next;
+                    int pos;
+                    if (fromOld) {
+                        records.duplicate().position(i * RECORD_SIZE).get(id);
+                        next = id;
+                        pos = records.getInt(i * RECORD_SIZE + 20);
+                        i += 1;
+                    } else {
+                        next = tailIds[tail[j]];
+                        pos = tail[j];
+                        j += 1;
+                    }
+                    out.write(next);
+                    out.writeInt(pos);
+                    counts[next[0] & 0xff] += 1;
+                }
+            }
+            ByteBuffer table = ByteBuffer.allocate(256 * 4);
+            int sum = 0;
+            for (int b = 0; b < 256; b += 1) {
+                sum += counts[b];
+                table.putInt(sum);
+            }
+            table.flip();
+            try (FileChannel channel = FileChannel.open(temp.toPath(),
+                                                        StandardOpenOption.WRITE)) {
+                channel.write(table, 12);
+            }
+            Files.move(temp.toPath(), INDEX_FILE.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        map();
+    }
+
+    /* Maps INDEX_FILE, or starts empty if it is missing or unreadable. */
+    private void map() {
+        covered = 0;
+        records = ByteBuffer.allocate(0);
+        Arrays.fill(fanout, 0);
+        if (!INDEX_FILE.isFile()) {
+            return;
+        }
+        try (FileChannel in = FileChannel.open(INDEX_FILE.toPath(),
+                                               StandardOpenOption.READ)) {
+            if (in.size() < HEADER_SIZE) {
+                return;
+            }
+            ByteBuffer header = in.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                return;
+            }
+            int count = header.getInt(8);
+            if (HEADER_SIZE + (long) count * RECORD_SIZE > in.size()) {
+                return;
+            }
+            for (int b = 0; b < 256; b += 1) {
+                fanout[b] = header.getInt(12 + 4 * b);
+            }
+            records = in.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE,
+                             (long) count * RECORD_SIZE);
+            covered = count;
+        } catch (IOException excp) {
+            covered = 0;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/* A stat cache for the working directory. For every file gitlet has hashed
+   it remembers the size, modification time and inode the file had at the
+   time, together with the resulting blob id, so that a file whose metadata
+   has not changed is recognized without reading it again.
+
+   An entry is only trusted if the file's modification time is safely older
+   than the moment the index was last saved. Otherwise the file could have
+   been changed again within the same timestamp tick, after it was hashed,
+   without its metadata showing it ("racy" entries). A save smudges every
+   entry that is racy at the time it is written, giving it a size no file
+   has, so that no later save can make it trusted; the file is hashed again
+   the next time it is looked at, and its fresh entry trusted once it is
+   safely older than a save.
+
+   Lookups may be made from several worker threads at once. */
+class Index {
+
+    /* Where the index lives. */
+    static final File INDEX_FILE = new File(Command.GITLETDIR, "index");
+
+    /* Format version written in the header. */
+    private static final int VERSION = 1;
+
+    /* How much older than the last save an entry's mtime must be before
+       it is trusted, allowing for coarse filesystem timestamps. */
+    private static final long RACY_WINDOW = TimeUnit.SECONDS.toNanos(1);
+
+    /* Cached metadata of one working file. */
+    private static class Entry {
+        final long size;
+        final long mtime;
+        final long inode;
+        final String id;
+
+        Entry(long size, long mtime, long inode, String id) {
+            this.size = size;
+            this.mtime = mtime;
+            this.inode = inode;
+            this.id = id;
+        }
+    }
+
+    /* Maps working file paths to their cached metadata. */
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /* Time of the last save, in nanoseconds since the epoch. */
+    private long savedAt;
+
+    /* True iff the index has changed since it was loaded. */
+    private volatile boolean dirty;
+
+    /* Size recorded for a smudged entry, which matches no file. */
+    private static final long SMUDGED = -1;
+
+    /* Returns the index saved in INDEX_FILE, or an empty one. */
+    static Index load() {
+        return load(INDEX_FILE);
+    }
+
+    /* Returns the index saved in FILE, or an empty one. */
+    static Index load(File file) {
+        Index index = new Index();
+        if (!file.isFile()) {
+            return index;
+        }
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != VERSION) {
+                return index;
+            }
+            index.savedAt = in.readLong();
+            int count = in.readInt();
+            byte[] id = new byte[20];
+            for (int i = 0; i < count; i += 1) {
+                String path = in.readUTF();
+                long size = in.readLong();
+                long mtime = in.readLong();
+                long inode = in.readLong();
+                in.readFully(id);
+                index.entries.put(path, new Entry(size, mtime, inode,
+                                                  Utils.toHex(id, 0, 20)));
+            }
+        } catch (IOException excp) {
+            /* A damaged index only costs rehashing. */
+            index.entries.clear();
+        }
+        return index;
+    }
+
+    /* Writes the index to INDEX_FILE if it has changed. */
+    void save() {
+        save(INDEX_FILE);
+    }
+
+    /* Writes the index to FILE if it has changed, smudging the entries that
+       are racy as of now. */
+    void save(File file) {
+        if (!dirty || !file.getParentFile().isDirectory()) {
+            return;
+        }
+        try {
+            long writtenAt = now();
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                Entry entry = e.getValue();
+                if (entry.size != SMUDGED && entry.mtime + RACY_WINDOW >= writtenAt) {
+                    e.setValue(new Entry(SMUDGED, entry.mtime, entry.inode, entry.id));
+                }
+            }
+            File temp = File.createTempFile("index-", null, file.getParentFile());
+            try (DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(VERSION);
+                out.writeLong(writtenAt);
+                out.writeInt(entries.size());
+                for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                    Entry entry = e.getValue();
+                    out.writeUTF(e.getKey());
+                    out.writeLong(entry.size);
+                    out.writeLong(entry.mtime);
+                    out.writeLong(entry.inode);
+                    out.write(Utils.fromHex(entry.id));
+                }
+            }
+            Trace.count(Trace.Counter.BYTES_WRITTEN, temp.length());
+            Files.move(temp.toPath(), file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+            savedAt = writtenAt;
+            dirty = false;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /* Returns the blob id of the file PATH in the directory DIR, or null if
+       there is no such file. The file is only read if its metadata does not
+       match a trusted entry. */
+    String id(File dir, String path) {
+        File file = new File(dir, path);
+        long[] stat = stat(file);
+        if (stat == null) {
+            return null;
+        }
+        String id = trusted(path, stat);
+        if (id == null) {
+            id = Utils.sha1(file);
+            entries.put(path, new Entry(stat[0], stat[1], stat[2], id));
+            dirty = true;
+        }
+        return id;
+    }
+
+    /* Stores the contents of the file PATH in DIR in STORE and returns its
+       blob id. The file is not read at all if a trusted entry names an
+       object that STORE already has. */
+    String store(File dir, String path, ObjectStore store) {
+        File file = new File(dir, path);
+        long[] stat = stat(file);
+        if (stat == null) {
+            throw new IllegalArgumentException("must be a normal file");
+        }
+        String id = trusted(path, stat);
+        if (id == null || !store.contains(id)) {
+            id = store.putFile(file);
+            entries.put(path, new Entry(stat[0], stat[1], stat[2], id));
+            dirty = true;
+        }
+        return id;
+    }
+
+    /* Returns the id recorded for PATH if its entry matches STAT and is not
+       racy, and null otherwise. */
+    private String trusted(String path, long[] stat) {
+        Entry entry = entries.get(path);
+        if (entry != null && entry.size == stat[0] && entry.mtime == stat[1]
+            && entry.inode == stat[2] && entry.mtime + RACY_WINDOW < savedAt) {
+            Trace.cache(Trace.Counter.INDEX_HITS, Trace.Counter.INDEX_MISSES, true);
+            return entry.id;
+        }
+        Trace.cache(Trace.Counter.INDEX_HITS, Trace.Counter.INDEX_MISSES, false);
+        return null;
+    }
+
+    /* Records that the file PATH in DIR now has contents ID, typically just
+       after gitlet hashed or wrote it. */
+    void record(File dir, String path, String id) {
+        long[] stat = stat(new File(dir, path));
+        if (stat == null) {
+            forget(path);
+        } else {
+            entries.put(path, new Entry(stat[0], stat[1], stat[2], id));
+            dirty = true;
+        }
+    }
+
+    /* Drops any entry for PATH. */
+    void forget(String path) {
+        if (entries.remove(path) != null) {
+            dirty = true;
+        }
+    }
+
+    /* Returns {size, mtime in nanoseconds, inode} of FILE, or null if it is
+       not a normal file. The inode is 0 where the platform does not have
+       one. */
+    private static long[] stat(File file) {
+        try {
+            Map<String, Object> attrs;
+            long inode = 0;
+            try {
+                attrs = Files.readAttributes(file.toPath(),
+                                             "unix:size,lastModifiedTime,ino,isRegularFile");
+                inode = ((Number) attrs.get("ino")).longValue();
+            } catch (UnsupportedOperationException | IllegalArgumentException excp) {
+                attrs = Files.readAttributes(file.toPath(),
+                                             "size,lastModifiedTime,isRegularFile");
+            }
+            if (!Boolean.TRUE.equals(attrs.get("isRegularFile"))) {
+                return null;
+            }
+            long size = ((Number) attrs.get("size")).longValue();
+            long mtime = ((FileTime) attrs.get("lastModifiedTime")).to(TimeUnit.NANOSECONDS);
+            return new long[] {size, mtime, inode};
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /* Returns the current time in nanoseconds since the epoch. */
+    private static long now() {
+        return TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+    }
+}
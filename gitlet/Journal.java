@@ -0,0 +1,268 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/* Persists the container as a snapshot plus a journal of changes.
+
+   The snapshot is Command.containerDir, in the Codec format. Each command
+   that changes refs or staging appends one record to .gitlet/journal
+   rather than rewriting the snapshot: a 4-byte length, a CRC-32 of the
+   payload, and the payload, a list of operations that each set or remove
+   one value (the current branch, a branch head, a staged or removed
+   file). Loading replays the records over the snapshot, stopping at the
+   first one that is incomplete or fails its checksum, which is what a
+   crash during an append leaves behind; the next append overwrites it.
+
+   Once the journal outgrows both COMPACT_SIZE and the snapshot itself
+   (so that compaction stays a fixed fraction of the work however large
+   the container gets), the whole container is written to a temporary
+   file, forced to disk and renamed over the snapshot; the .gitlet
+   directory is forced too, so that the rename is durable before the
+   journal is deleted. A crash between the two leaves records that the
+   snapshot already reflects; since every operation assigns a value
+   outright, replaying them again changes nothing. */
+class Journal {
+
+    /* Where the journal lives. */
+    static final File JOURNAL_FILE = new File(Command.GITLETDIR, "journal");
+
+    /* Smallest journal size at which the next save writes a new snapshot. */
+    static final int COMPACT_SIZE = 64 * 1024;
+
+    /* Operation codes. */
+    private static final int SET_CURRENT = 1;
+    private static final int SET_BRANCH = 2;
+    private static final int REMOVE_BRANCH = 3;
+    private static final int STAGE = 4;
+    private static final int UNSTAGE = 5;
+    private static final int MARK_REMOVED = 6;
+    private static final int UNMARK_REMOVED = 7;
+    private static final int SET_FIRST = 8;
+
+    /* The container as loaded, or null if there is no repository. */
+    private final Container container;
+
+    /* Copies of the container's state as last loaded or saved, against
+       which the next save is compared. */
+    private String currBranch;
+    private String firstCommitId;
+    private Map<String, String> branchMap = new HashMap<>();
+    private Map<String, String> stagingArea = new HashMap<>();
+    private Set<String> untracked = new HashSet<>();
+
+    /* Length of the intact prefix of JOURNAL_FILE. */
+    private long length;
+
+    private Journal(Container container) {
+        this.container = container;
+    }
+
+    /* Returns the journal of the repository in the current directory,
+       with the container replayed from the snapshot and journal. */
+    static Journal open() {
+        if (!Command.containerDir.isFile()) {
+            return new Journal(null);
+        }
+        Container container = Codec.decodeContainer(Utils.readContents(Command.containerDir));
+        Journal journal = new Journal(container);
+        if (JOURNAL_FILE.isFile()) {
+            journal.replay(Utils.readContents(JOURNAL_FILE));
+            container.currCommit = Commit.load(container.branchMap.get(container.currBranch));
+        }
+        journal.remember(container);
+        return journal;
+    }
+
+    /* Returns the loaded container, or null if there is no repository. */
+    Container container() {
+        return container;
+    }
+
+    /* Records the changes made to CONTAINER since it was loaded or last
+       saved, compacting the journal if it has grown too long. */
+    void save(Container container) {
+        if (!Command.containerDir.isFile()
+            || length >= Math.max(COMPACT_SIZE, Command.containerDir.length())) {
+            compact(container);
+            return;
+        }
+        byte[] payload = changes(container);
+        if (payload.length == 0) {
+            return;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer record = ByteBuffer.allocate(8 + payload.length);
+        record.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+        record.flip();
+        try (FileChannel out = FileChannel.open(JOURNAL_FILE.toPath(),
+                 StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            /* Drop any torn record left by a crash. */
+            out.truncate(length);
+            int written = out.write(record, length);
+            length += written;
+            Trace.count(Trace.Counter.BYTES_WRITTEN, written);
+            out.force(false);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        remember(container);
+    }
+
+    /* Writes CONTAINER as the new snapshot and empties the journal. */
+    private void compact(Container container) {
+        try {
+            File temp = File.createTempFile("container-", null, Command.GITLETDIR);
+            ByteBuffer snapshot = ByteBuffer.wrap(Codec.encodeContainer(container));
+            try (FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE)) {
+                while (snapshot.hasRemaining()) {
+                    out.write(snapshot);
+                }
+                out.force(true);
+            }
+            Trace.count(Trace.Counter.BYTES_WRITTEN, snapshot.capacity());
+            Files.move(temp.toPath(), Command.containerDir.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+            Utils.syncDirectory(Command.GITLETDIR);
+            Files.deleteIfExists(JOURNAL_FILE.toPath());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        length = 0;
+        remember(container);
+    }
+
+    /* Returns the operations that turn the remembered state into that of
+       CONTAINER, or an empty array if there are none. */
+    private byte[] changes(Container container) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            if (!container.currBranch.equals(currBranch)) {
+                out.writeByte(SET_CURRENT);
+                out.writeUTF(container.currBranch);
+            }
+            if (container.firstCommitId != null
+                && !container.firstCommitId.equals(firstCommitId)) {
+                out.writeByte(SET_FIRST);
+                out.write(Utils.fromHex(container.firstCommitId));
+            }
+            writeMap(out, branchMap, container.branchMap, SET_BRANCH, REMOVE_BRANCH);
+            writeMap(out, stagingArea, container.stagingArea, STAGE, UNSTAGE);
+            for (String name : container.untracked) {
+                if (!untracked.contains(name)) {
+                    out.writeByte(MARK_REMOVED);
+                    out.writeUTF(name);
+                }
+            }
+            for (String name : untracked) {
+                if (!container.untracked.contains(name)) {
+                    out.writeByte(UNMARK_REMOVED);
+                    out.writeUTF(name);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /* Writes SET operations for the entries of NOW that differ from THEN,
+       and REMOVE operations for the keys that are gone. */
+    private static void writeMap(DataOutputStream out, Map<String, String> then,
+                                 Map<String, String> now, int set, int remove)
+        throws IOException {
+        for (Map.Entry<String, String> entry : now.entrySet()) {
+            if (!entry.getValue().equals(then.get(entry.getKey()))) {
+                out.writeByte(set);
+                out.writeUTF(entry.getKey());
+                out.write(Utils.fromHex(entry.getValue()));
+            }
+        }
+        for (String key : then.keySet()) {
+            if (!now.containsKey(key)) {
+                out.writeByte(remove);
+                out.writeUTF(key);
+            }
+        }
+    }
+
+    /* Applies the intact records of DATA to the container, and sets LENGTH
+       to the size of the intact prefix. */
+    private void replay(byte[] data) {
+        ByteBuffer in = ByteBuffer.wrap(data);
+        while (in.remaining() >= 8) {
+            int size = in.getInt(in.position());
+            int checksum = in.getInt(in.position() + 4);
+            if (size < 0 || size > in.remaining() - 8) {
+                break;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(data, in.position() + 8, size);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            apply(new ByteArrayInputStream(data, in.position() + 8, size));
+            in.position(in.position() + 8 + size);
+        }
+        length = in.position();
+    }
+
+    /* Applies the operations read from BYTES to the container. */
+    private void apply(ByteArrayInputStream bytes) {
+        Container c = container;
+        byte[] id = new byte[20];
+        try (DataInputStream in = new DataInputStream(bytes)) {
+            while (true) {
+                int op = in.read();
+                if (op < 0) {
+                    return;
+                }
+                String name = op == SET_FIRST ? null : in.readUTF();
+                if (op == SET_BRANCH || op == STAGE || op == SET_FIRST) {
+                    in.readFully(id);
+                }
+                switch (op) {
+                    case SET_CURRENT: c.currBranch = name; break;
+                    case SET_FIRST: c.firstCommitId = Utils.toHex(id, 0, 20); break;
+                    case SET_BRANCH: c.branchMap.put(name, Utils.toHex(id, 0, 20)); break;
+                    case REMOVE_BRANCH: c.branchMap.remove(name); break;
+                    case STAGE: c.stagingArea.put(name, Utils.toHex(id, 0, 20)); break;
+                    case UNSTAGE: c.stagingArea.remove(name); break;
+                    case MARK_REMOVED: c.untracked.add(name); break;
+                    case UNMARK_REMOVED: c.untracked.remove(name); break;
+                    default: throw new IllegalArgumentException("unreadable journal");
+                }
+            }
+        } catch (EOFException excp) {
+            throw new IllegalArgumentException("unreadable journal");
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /* Copies the state of CONTAINER for comparison at the next save. */
+    private void remember(Container container) {
+        currBranch = container.currBranch;
+        firstCommitId = container.firstCommitId;
+        branchMap = new HashMap<>(container.branchMap);
+        stagingArea = new HashMap<>(container.stagingArea);
+        untracked = new HashSet<>(container.untracked);
+    }
+}
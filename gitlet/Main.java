@@ -1,10 +1,11 @@
 package gitlet;
 
-import java.io.IOException;
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
 import java.io.FileOutputStream;
-import java.io.FileInputStream;
-import java.io.ObjectOutputStream;
-import java.io.ObjectInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.channels.FileChannel;
 
 /* Driver class for Gitlet, the tiny stupid version-control system.
    @author
@@ -14,35 +15,75 @@ public class Main {
     /* Usage: java gitlet.Main ARGS, where ARGS contains
        <COMMAND> <OPERAND> .... */
     public static void main(String... args) throws IOException {
+        /* Commands print through System.out; buffer it so that long
+           listings are not written a line at a time. */
+        PrintStream out = new PrintStream(new BufferedOutputStream(
+            new FileOutputStream(FileDescriptor.out), Utils.IO_BUFFER_SIZE), false);
+        System.setOut(out);
+        int status = 0;
         try {
-            Command command = new Command(args);
-            Container container = loadContainer();
-            container = command.execute(container);
-            if (container != null) {
-                saveContainer(container);
+            args = Trace.start(args);
+            if (args.length > 0 && args[0].equals("daemon")) {
+                Daemon.command(args);
+            } else if (args.length > 0 && args[0].equals("batch")) {
+                status = Batch.run(args);
+            } else if (!Daemon.forward(args)) {
+                run(args);
             }
         } catch (IllegalArgumentException e) {
             System.out.println(e.getMessage());
+        } finally {
+            out.flush();
+            Trace.finish();
+        }
+        if (status != 0) {
+            System.exit(status);
         }
     }
 
-    private static void saveContainer(Container container) {
-        try (ObjectOutputStream out = new ObjectOutputStream(
-                new FileOutputStream(Command.containerDir))) {
-            out.writeObject(container);
-        } catch (IOException e) {
-            return;
+    /* Runs the command ARGS against the repository on disk, holding the
+       repository lock while it does. */
+    private static void run(String... args) {
+        Command command = new Command(args);
+        FileChannel lock = Daemon.lock(true);
+        try {
+            Journal journal;
+            Trace.Phase phase = Trace.phase("load");
+            try {
+                journal = Journal.open();
+            } finally {
+                phase.close();
+            }
+            Container container;
+            phase = Trace.phase("execute");
+            try {
+                container = command.execute(journal.container());
+            } finally {
+                phase.close();
+            }
+            if (container != null) {
+                phase = Trace.phase("save");
+                try {
+                    journal.save(container);
+                    container.index().save();
+                } finally {
+                    phase.close();
+                }
+            }
+        } finally {
+            release(lock);
         }
     }
 
-    private static Container loadContainer() {
-        Container container = null;
-        try (ObjectInputStream in =
-                     new ObjectInputStream(new FileInputStream(Command.containerDir))) {
-            container = (Container) in.readObject();
-        } catch (IOException | ClassNotFoundException e) {
-            container = null;
+    /* Releases the repository lock held by LOCK, if any. */
+    private static void release(FileChannel lock) {
+        if (lock == null) {
+            return;
+        }
+        try {
+            lock.close();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
         }
-        return container;
     }
 }
@@ -0,0 +1,151 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/* A line-by-line three-way merge of texts, in the manner of diff3.
+
+   The changes from the base to each side are found with Diff. A change
+   is taken as it is unless the other side changes some of the same base
+   lines, or lines right next to them; overlapping changes that produce
+   the same lines on both sides are taken once. Anything else is a
+   conflict, written as
+
+       <<<<<<< HEAD
+       our lines
+       =======
+       their lines
+       >>>>>>>
+
+   with the lines that both sides agree on at either end of the region
+   left outside the markers, so that each conflict is as small as it can
+   be. Where a side's lines do not end in a newline, one is added before
+   the marker that follows them. */
+class Merge {
+
+    /* Conflict markers. */
+    static final byte[] OURS = "<<<<<<< HEAD\n".getBytes(StandardCharsets.UTF_8);
+    static final byte[] SEPARATOR = "=======\n".getBytes(StandardCharsets.UTF_8);
+    static final byte[] THEIRS = ">>>>>>>\n".getBytes(StandardCharsets.UTF_8);
+
+    /* The merged text. */
+    final byte[] result;
+
+    /* The number of conflicts in RESULT. */
+    final int conflicts;
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    /* Whether OUT ends in a line without its newline. */
+    private boolean partial;
+
+    /* Merges into BASE the changes made to it by OURS and by THEIRS. */
+    Merge(byte[] base, byte[] ours, byte[] theirs) {
+        Diff mine = new Diff(base, ours), other = new Diff(base, theirs);
+        Diff.Lines lines = mine.a, o = mine.b, t = other.b;
+        List<int[]> a = mine.changes(), b = other.changes();
+        int ia = 0, ib = 0, deltaA = 0, deltaB = 0, next = 0, found = 0;
+        while (ia < a.size() || ib < b.size()) {
+            /* Gather the changes on both sides that overlap or touch. */
+            int fa = ia, fb = ib;
+            boolean fromA = ib == b.size() || (ia < a.size() && a.get(ia)[0] <= b.get(ib)[0]);
+            int lo = fromA ? a.get(ia)[0] : b.get(ib)[0];
+            int hi = lo;
+            for (boolean grew = true; grew; ) {
+                grew = false;
+                for (; ia < a.size() && a.get(ia)[0] <= hi; ia += 1) {
+                    hi = Math.max(hi, a.get(ia)[1]);
+                    grew = true;
+                }
+                for (; ib < b.size() && b.get(ib)[0] <= hi; ib += 1) {
+                    hi = Math.max(hi, b.get(ib)[1]);
+                    grew = true;
+                }
+            }
+            write(lines, next, lo);
+            int[] ra = range(a, fa, ia, lo, hi, deltaA), rb = range(b, fb, ib, lo, hi, deltaB);
+            if (fa == ia) {
+                write(t, rb[0], rb[1]);
+            } else if (fb == ib || same(o, ra, t, rb)) {
+                write(o, ra[0], ra[1]);
+            } else {
+                conflict(o, ra, t, rb);
+                found += 1;
+            }
+            if (fa < ia) {
+                deltaA = a.get(ia - 1)[3] - a.get(ia - 1)[1];
+            }
+            if (fb < ib) {
+                deltaB = b.get(ib - 1)[3] - b.get(ib - 1)[1];
+            }
+            next = hi;
+        }
+        write(lines, next, lines.count);
+        result = out.toByteArray();
+        conflicts = found;
+    }
+
+    /* Returns the lines {start, end} of a side that replace the base lines
+       LO to HI, given its changes CHANGES[FIRST..END) among them and, if
+       there are none, its offset DELTA from the base. */
+    private static int[] range(List<int[]> changes, int first, int end,
+                               int lo, int hi, int delta) {
+        if (first == end) {
+            return new int[] {lo + delta, hi + delta};
+        }
+        int[] head = changes.get(first), tail = changes.get(end - 1);
+        return new int[] {head[2] - (head[0] - lo), tail[3] + (hi - tail[1])};
+    }
+
+    /* Returns true iff lines RA of O are the same as lines RB of T. */
+    private static boolean same(Diff.Lines o, int[] ra, Diff.Lines t, int[] rb) {
+        if (ra[1] - ra[0] != rb[1] - rb[0]) {
+            return false;
+        }
+        for (int i = ra[0], j = rb[0]; i < ra[1]; i += 1, j += 1) {
+            if (!o.same(i, t, j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* Writes a conflict between lines RA of O and lines RB of T, leaving
+       their common first and last lines outside it. */
+    private void conflict(Diff.Lines o, int[] ra, Diff.Lines t, int[] rb) {
+        int i = ra[0], j = rb[0], endA = ra[1], endB = rb[1];
+        while (i < endA && j < endB && o.same(i, t, j)) {
+            i += 1;
+            j += 1;
+        }
+        while (i < endA && j < endB && o.same(endA - 1, t, endB - 1)) {
+            endA -= 1;
+            endB -= 1;
+        }
+        write(o, ra[0], i);
+        marker(OURS);
+        write(o, i, endA);
+        marker(SEPARATOR);
+        write(t, j, endB);
+        marker(THEIRS);
+        write(o, endA, ra[1]);
+    }
+
+    /* Writes lines FROM to TO of LINES. */
+    private void write(Diff.Lines lines, int from, int to) {
+        if (from < to) {
+            out.write(lines.text, lines.start[from], lines.start[to] - lines.start[from]);
+            partial = lines.text[lines.start[to] - 1] != '\n';
+        }
+    }
+
+    /* Writes MARKER on a line of its own. */
+    private void marker(byte[] marker) {
+        if (partial) {
+            out.write('\n');
+        }
+        out.writeBytes(marker);
+        partial = false;
+    }
+}
@@ -0,0 +1,295 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/* An inverted index of commit messages, so that find reads only the
+   entries that can match instead of every commit.
+
+   Under .gitlet/messages, the directory "exact" maps the SHA-1 of a whole
+   message, and "words" maps the SHA-1 of each word in it, to the graph
+   positions of the commits concerned. Each directory fans out into up to
+   256 bucket files named by the first byte of the key. A bucket holds the
+   number of its sorted records, those 24-byte records (20-byte key, 4-byte
+   position) sorted by key and position, and then a short tail of records
+   appended since, in the order added. A lookup binary-searches the
+   memory-mapped sorted records and scans the tail, so its cost follows
+   the number of matches rather than the length of the history; once a
+   tail outgrows TAIL_LIMIT, the bucket is rewritten with it merged in.
+
+   The file "covered" records the format version and how many graph
+   positions have been indexed; positions beyond it are indexed on the
+   next update, which also builds the index afresh for repositories made
+   before it existed or in an older format. A record repeated after a
+   crash is harmless, and a torn last record is cut off before the next
+   append. */
+class MessageIndex {
+
+    /* Where the index lives. */
+    static final File DIR = new File(Command.GITLETDIR, "messages");
+
+    /* Number of graph positions indexed. */
+    private static final File COVERED_FILE = new File(DIR, "covered");
+
+    private static final String EXACT = "exact";
+    private static final String WORDS = "words";
+
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 4;
+    private static final int RECORD_SIZE = 24;
+
+    /* Longest unsorted tail a bucket keeps before it is rewritten. */
+    static final int TAIL_LIMIT = 64;
+
+    /* The graph whose positions this indexes. */
+    private final CommitGraph graph;
+
+    /* Graph positions 0 .. covered-1 are indexed. */
+    private int covered;
+
+    MessageIndex(CommitGraph graph) {
+        this.graph = graph;
+        if (COVERED_FILE.isFile()) {
+            ByteBuffer data = ByteBuffer.wrap(Utils.readContents(COVERED_FILE));
+            if (data.capacity() == 8 && data.getInt(0) == VERSION) {
+                covered = Math.min(data.getInt(4), graph.size());
+            }
+        }
+    }
+
+    /* Indexes every commit added to the graph since the last update. */
+    void update() {
+        if (covered >= graph.size()) {
+            return;
+        }
+        if (covered == 0) {
+            /* Anything there is stale, or in an older format. */
+            delete(new File(DIR, EXACT));
+            delete(new File(DIR, WORDS));
+        }
+        Map<File, ByteArrayOutputStream> appends = new HashMap<>();
+        for (int pos = covered; pos < graph.size(); pos += 1) {
+            Commit commit = Commit.load(graph.id(pos));
+            if (commit == null) {
+                continue;
+            }
+            append(appends, EXACT, Utils.sha1(commit.message), pos);
+            for (String word : words(commit.message)) {
+                append(appends, WORDS, Utils.sha1(word), pos);
+            }
+        }
+        try {
+            for (Map.Entry<File, ByteArrayOutputStream> e : appends.entrySet()) {
+                append(e.getKey(), e.getValue().toByteArray());
+            }
+            covered = graph.size();
+            DIR.mkdirs();
+            File temp = File.createTempFile("covered-", null, DIR);
+            Utils.writeContents(temp, ByteBuffer.allocate(8).putInt(VERSION).putInt(covered)
+                                .array());
+            Files.move(temp.toPath(), COVERED_FILE.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /* Returns the ids of the commits whose message is MESSAGE, sorted. */
+    List<String> exact(String message) {
+        update();
+        return ids(positions(EXACT, Utils.sha1(message)));
+    }
+
+    /* Returns the ids of the commits whose messages contain every word of
+       QUERY, sorted. Words are compared ignoring case and punctuation. */
+    List<String> containing(String query) {
+        update();
+        Set<String> wanted = words(query);
+        Set<Integer> found = null;
+        for (String word : wanted) {
+            Set<Integer> positions = positions(WORDS, Utils.sha1(word));
+            if (found == null) {
+                found = positions;
+            } else {
+                found.retainAll(positions);
+            }
+            if (found.isEmpty()) {
+                break;
+            }
+        }
+        if (found == null) {
+            return Collections.emptyList();
+        }
+        /* Weed out any commits that only matched on a hash collision. */
+        Set<Integer> result = new HashSet<>();
+        for (int pos : found) {
+            Commit commit = Commit.load(graph.id(pos));
+            if (commit != null && words(commit.message).containsAll(wanted)) {
+                result.add(pos);
+            }
+        }
+        return ids(result);
+    }
+
+    /* Returns the distinct words of TEXT, lower-cased. */
+    static Set<String> words(String text) {
+        Set<String> result = new LinkedHashSet<>();
+        for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                result.add(word);
+            }
+        }
+        return result;
+    }
+
+    /* Adds a record mapping KEY to POS to the pending APPENDS for the
+       bucket of KEY in the directory KIND. */
+    private static void append(Map<File, ByteArrayOutputStream> appends,
+                               String kind, String key, int pos) {
+        ByteArrayOutputStream records =
+            appends.computeIfAbsent(bucket(kind, key), f -> new ByteArrayOutputStream());
+        records.writeBytes(Utils.fromHex(key));
+        records.writeBytes(ByteBuffer.allocate(4).putInt(pos).array());
+    }
+
+    /* Adds RECORDS to the tail of BUCKET, first cutting off any torn
+       record, and rewrites the bucket sorted if the tail has grown past
+       TAIL_LIMIT. */
+    private static void append(File bucket, byte[] records) throws IOException {
+        bucket.getParentFile().mkdirs();
+        try (FileChannel out = FileChannel.open(bucket.toPath(), StandardOpenOption.CREATE,
+                                                StandardOpenOption.READ,
+                                                StandardOpenOption.WRITE)) {
+            long length = out.size();
+            if (length < HEADER_SIZE) {
+                out.truncate(0);
+                out.write(ByteBuffer.allocate(HEADER_SIZE).putInt(0).flip(), 0);
+                length = HEADER_SIZE;
+            }
+            length -= (length - HEADER_SIZE) % RECORD_SIZE;
+            out.truncate(length);
+            out.write(ByteBuffer.wrap(records), length);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            out.read(header, 0);
+            long tail = (length + records.length - HEADER_SIZE) / RECORD_SIZE
+                - header.getInt(0);
+            if (tail <= TAIL_LIMIT) {
+                return;
+            }
+        }
+        rewrite(bucket);
+    }
+
+    /* Rewrites BUCKET with all its records sorted. */
+    private static void rewrite(File bucket) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Utils.readContents(bucket));
+        int count = (data.capacity() - HEADER_SIZE) / RECORD_SIZE;
+        List<byte[]> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i += 1) {
+            byte[] record = new byte[RECORD_SIZE];
+            data.get(HEADER_SIZE + i * RECORD_SIZE, record);
+            records.add(record);
+        }
+        records.sort((a, b) -> Arrays.compareUnsigned(a, b));
+        File temp = File.createTempFile("bucket-", null, bucket.getParentFile());
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(count);
+            for (byte[] record : records) {
+                out.write(record);
+            }
+        }
+        Files.move(temp.toPath(), bucket.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /* Returns the positions recorded under KEY in the directory KIND. */
+    private Set<Integer> positions(String kind, String key) {
+        Set<Integer> result = new HashSet<>();
+        File bucket = bucket(kind, key);
+        if (!bucket.isFile()) {
+            return result;
+        }
+        byte[] want = Utils.fromHex(key);
+        try (FileChannel in = FileChannel.open(bucket.toPath(), StandardOpenOption.READ)) {
+            if (in.size() < HEADER_SIZE) {
+                return result;
+            }
+            ByteBuffer records = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            int count = (records.capacity() - HEADER_SIZE) / RECORD_SIZE;
+            int sorted = Math.min(records.getInt(0), count);
+            byte[] have = new byte[20];
+            /* The first sorted record whose key is not less than WANT. */
+            int lo = 0, hi = sorted;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                records.get(HEADER_SIZE + mid * RECORD_SIZE, have);
+                if (Arrays.compareUnsigned(have, want) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            for (int i = lo; i < count; i += 1) {
+                int offset = HEADER_SIZE + i * RECORD_SIZE;
+                records.get(offset, have);
+                if (Arrays.equals(have, want)) {
+                    int pos = records.getInt(offset + 20);
+                    if (pos < covered) {
+                        result.add(pos);
+                    }
+                } else if (i < sorted) {
+                    /* Past the matching sorted records; on to the tail. */
+                    i = sorted - 1;
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return result;
+    }
+
+    /* Returns the ids of the commits at POSITIONS, sorted. */
+    private List<String> ids(Set<Integer> positions) {
+        List<String> result = new ArrayList<>(positions.size());
+        for (int pos : positions) {
+            result.add(graph.id(pos));
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    private static File bucket(String kind, String key) {
+        return new File(new File(DIR, kind), key.substring(0, 2));
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,585 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/* A content-addressed store of immutable objects, keyed by SHA-1 id.
+   An object with id "abcdef..." lives in ROOT/ab/cdef..., so no single
+   directory ever holds more than a 1/256 slice of the repository and
+   lookups never need to list a directory. Objects are write-once:
+   storing an id that is already present does nothing.
+
+   A loose object is stored compressed: a HEADER_SIZE-byte header (MAGIC
+   and the length of the contents) followed by the contents as a zlib
+   stream. Objects are deflated as they are written and inflated as they
+   are read, so storing or checking out a file never holds all of it in
+   memory. Files without the header, written before objects were
+   compressed, are read as they are.
+
+   Objects may also be gathered into Packs in ROOT/pack by repack, where
+   the versions of a file are stored as deltas against one another. Every
+   read looks in the packs when an object is not loose, so callers never
+   need to know where an object lives. */
+class ObjectStore {
+
+    /* The store holding file contents (blobs). */
+    static final ObjectStore BLOBS =
+        new ObjectStore(new File(Command.GITLETDIR, "objects"));
+
+    /* The store holding serialized commits. */
+    static final ObjectStore COMMITS =
+        new ObjectStore(new File(Command.GITLETDIR, "commits"));
+
+    /* The store holding directory trees. */
+    static final ObjectStore TREES =
+        new ObjectStore(new File(Command.GITLETDIR, "trees"));
+
+    /* Top-level directory of this store. */
+    private final File root;
+
+    /* First bytes of a compressed object. No text file starts with NUL. */
+    private static final byte[] MAGIC = {0, 'G', 'Z', 1};
+
+    /* Length of the header of a compressed object: MAGIC, then the
+       length of the contents as 8 bytes. */
+    private static final int HEADER_SIZE = MAGIC.length + 8;
+
+    /* Ids currently being published by some thread, so that concurrent
+       writers of identical contents publish them only once. */
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    /* The packs of this store, opened on first use. */
+    private volatile List<Pack> packs;
+
+    ObjectStore(File root) {
+        this.root = root;
+    }
+
+    /* Returns the packs of this store. */
+    private List<Pack> packs() {
+        List<Pack> result = packs;
+        if (result == null) {
+            synchronized (this) {
+                if (packs == null) {
+                    List<Pack> opened = new ArrayList<>();
+                    String[] names = packDir().list();
+                    if (names != null) {
+                        Arrays.sort(names);
+                        for (String name : names) {
+                            if (name.endsWith(".idx") && !name.startsWith("tmp-")) {
+                                opened.add(new Pack(new File(packDir(), name)));
+                            }
+                        }
+                    }
+                    packs = opened;
+                }
+                result = packs;
+            }
+        }
+        return result;
+    }
+
+    /* Returns the directory holding the packs. */
+    private File packDir() {
+        return new File(root, "pack");
+    }
+
+    /* Returns the pack holding the object ID and sets OFFSET[0] to its
+       offset there, or returns null if it is in no pack. */
+    private Pack packed(String id, long[] offset) {
+        for (Pack pack : packs()) {
+            offset[0] = pack.offset(id);
+            if (offset[0] >= 0) {
+                return pack;
+            }
+        }
+        return null;
+    }
+
+    /* Returns the top-level directory of this store. */
+    File root() {
+        return root;
+    }
+
+    /* Returns the file that holds (or would hold) the object ID. */
+    File file(String id) {
+        if (id == null || id.length() < 3) {
+            throw new IllegalArgumentException("invalid object id");
+        }
+        return new File(new File(root, id.substring(0, 2)), id.substring(2));
+    }
+
+    /* Returns true iff the object ID is present. */
+    boolean contains(String id) {
+        return id != null && id.length() > 2
+            && (file(id).isFile() || packed(id, new long[1]) != null);
+    }
+
+    /* Stores CONTENTS under ID unless an object with that id already
+       exists. The object is written to a temporary file in its fan-out
+       directory and then renamed into place, so a reader never sees a
+       partially written object. */
+    void put(String id, byte[] contents) {
+        File dest = file(id);
+        if (dest.isFile() || packed(id, new long[1]) != null) {
+            return;
+        }
+        File dir = dest.getParentFile();
+        dir.mkdirs();
+        try {
+            File temp = File.createTempFile("tmp-", null, dir);
+            try (OutputStream out = deflating(temp, contents.length)) {
+                out.write(contents);
+            }
+            Trace.count(Trace.Counter.BYTES_WRITTEN, temp.length());
+            publish(temp, dest);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /* Stores the contents of the file SOURCE and returns its id. The file is
+       hashed while it is deflated into a temporary file, so it is read only
+       once and never held in memory as a whole; the copy is then renamed
+       into place, or discarded if the object was already present. */
+    String putFile(File source) {
+        if (!source.isFile()) {
+            throw new IllegalArgumentException("must be a normal file");
+        }
+        root.mkdirs();
+        File temp = null;
+        try {
+            temp = File.createTempFile("tmp-", null, root);
+            MessageDigest md = Utils.sha1Digest();
+            byte[] buffer = new byte[Utils.IO_BUFFER_SIZE];
+            long length = 0;
+            try (InputStream in = new FileInputStream(source);
+                 OutputStream out = deflating(temp, source.length())) {
+                for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                    md.update(buffer, 0, n);
+                    out.write(buffer, 0, n);
+                    length += n;
+                }
+            }
+            Trace.count(Trace.Counter.BYTES_HASHED, length);
+            Trace.count(Trace.Counter.BYTES_READ, length);
+            if (length != source.length()) {
+                /* The file changed while it was read; record what was. */
+                try (FileChannel out = FileChannel.open(temp.toPath(),
+                                                        StandardOpenOption.WRITE)) {
+                    out.write(ByteBuffer.allocate(8).putLong(0, length), MAGIC.length);
+                }
+            }
+            byte[] digest = md.digest();
+            String id = Utils.toHex(digest, 0, digest.length);
+            File dest = file(id);
+            if (dest.isFile() || packed(id, new long[1]) != null || !inFlight.add(id)) {
+                temp.delete();
+            } else {
+                try {
+                    dest.getParentFile().mkdirs();
+                    Trace.count(Trace.Counter.BYTES_WRITTEN, temp.length());
+                    publish(temp, dest);
+                } finally {
+                    inFlight.remove(id);
+                }
+            }
+            return id;
+        } catch (IOException excp) {
+            if (temp != null) {
+                temp.delete();
+            }
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /* Returns the contents of the object ID. Throws
+       IllegalArgumentException if there is no such object. */
+    byte[] get(String id) {
+        File source = file(id);
+        if (!source.isFile()) {
+            long[] offset = new long[1];
+            Pack pack = packed(id, offset);
+            if (pack == null) {
+                throw new IllegalArgumentException("No object with id " + id);
+            }
+            return pack.get(offset[0]);
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                 new FileInputStream(source), HEADER_SIZE))) {
+            long length = compressedLength(in);
+            if (length < 0) {
+                return Utils.readContents(source);
+            }
+            Trace.count(Trace.Counter.BYTES_READ, source.length());
+            if (length > Integer.MAX_VALUE - 8) {
+                throw new IllegalArgumentException("object " + id
+                                                   + " is too large to read into memory");
+            }
+            byte[] contents;
+            try (InputStream inflated = inflating(in)) {
+                contents = inflated.readNBytes((int) length);
+            }
+            if (contents.length != length) {
+                throw new IllegalArgumentException("corrupt object " + id);
+            }
+            return contents;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /* Returns {length of the contents, bytes taken on disk} of the object
+       ID, reading no more than its header. */
+    long[] sizes(String id) {
+        File source = file(id);
+        if (source.isFile()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                     new FileInputStream(source), HEADER_SIZE))) {
+                long length = compressedLength(in);
+                return new long[] {length < 0 ? source.length() : length, source.length()};
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        long[] offset = new long[1];
+        Pack pack = packed(id, offset);
+        if (pack == null) {
+            throw new IllegalArgumentException("No object with id " + id);
+        }
+        return pack.size(offset[0]);
+    }
+
+    /* Returns the number of packs in this store. */
+    int packCount() {
+        return packs().size();
+    }
+
+    /* Returns true iff the object ID is stored loose, in its own file. */
+    boolean isLoose(String id) {
+        return file(id).isFile();
+    }
+
+    /* Writes the contents of the object ID to DEST, creating or
+       overwriting it as needed. A loose object, or a packed one stored
+       whole, is inflated straight into DEST, not read into memory. A
+       packed delta is rebuilt in memory, as applying it needs its base. */
+    void copyTo(String id, File dest) {
+        File source = file(id);
+        long[] offset = new long[1];
+        Pack pack = source.isFile() ? null : packed(id, offset);
+        if (!source.isFile() && pack == null) {
+            throw new IllegalArgumentException("No object with id " + id);
+        }
+        if (dest.isDirectory()) {
+            throw new IllegalArgumentException("cannot overwrite directory");
+        }
+        try {
+            Files.createDirectories(dest.toPath().toAbsolutePath().getParent());
+            Trace.count(Trace.Counter.FILES_CHECKED_OUT, 1);
+            if (pack != null) {
+                try (OutputStream out = new FileOutputStream(dest)) {
+                    if (!pack.copyTo(offset[0], out)) {
+                        out.write(pack.get(offset[0]));
+                    }
+                }
+                Trace.count(Trace.Counter.BYTES_WRITTEN, dest.length());
+                return;
+            }
+            Trace.count(Trace.Counter.BYTES_READ, source.length());
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                     new FileInputStream(source), Utils.IO_BUFFER_SIZE))) {
+                if (compressedLength(in) < 0) {
+                    Files.copy(in, dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                } else {
+                    try (InputStream inflated = inflating(in)) {
+                        Files.copy(inflated, dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    }
+                }
+            }
+            Trace.count(Trace.Counter.BYTES_WRITTEN, dest.length());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /* Returns the ids of all objects that start with PREFIX, in sorted
+       order. PREFIX must be at least two characters long, so only its
+       own fan-out directory is listed. */
+    List<String> idsWithPrefix(String prefix) {
+        List<String> loose = looseIdsWithPrefix(prefix);
+        if (prefix.length() < 2 || packs().isEmpty()) {
+            return loose;
+        }
+        Set<String> result = new TreeSet<>(loose);
+        for (Pack pack : packs()) {
+            result.addAll(pack.idsWithPrefix(prefix));
+        }
+        return new ArrayList<>(result);
+    }
+
+    /* Returns the ids of the loose objects that start with PREFIX, in
+       sorted order. */
+    private List<String> looseIdsWithPrefix(String prefix) {
+        List<String> result = new ArrayList<>();
+        if (prefix.length() < 2) {
+            return result;
+        }
+        String dirName = prefix.substring(0, 2);
+        String rest = prefix.substring(2);
+        List<String> names = Utils.plainFilenamesIn(new File(root, dirName));
+        if (names != null) {
+            for (String name : names) {
+                if (name.startsWith(rest) && !name.startsWith("tmp-")) {
+                    result.add(dirName + name);
+                }
+            }
+        }
+        return result;
+    }
+
+    /* Deletes the loose object ID, and its fan-out directory if that
+       leaves it empty. Returns the number of bytes freed. */
+    long remove(String id) {
+        File file = file(id);
+        long length = file.length();
+        if (!file.delete()) {
+            return 0;
+        }
+        file.getParentFile().delete();
+        return length;
+    }
+
+    /* Returns the temporary files left in the store by writes that never
+       finished. */
+    List<File> temporaries() {
+        List<File> result = new ArrayList<>();
+        File[] dirs = root.listFiles();
+        if (dirs == null) {
+            return result;
+        }
+        for (File dir : dirs) {
+            File[] files = dir.isDirectory() ? dir.listFiles() : new File[] {dir};
+            for (File file : files == null ? new File[0] : files) {
+                if (file.getName().startsWith("tmp-")) {
+                    result.add(file);
+                }
+            }
+        }
+        return result;
+    }
+
+    /* Returns the ids of every object in the store, in sorted order. */
+    List<String> ids() {
+        List<String> loose = looseIds();
+        if (packs().isEmpty()) {
+            return loose;
+        }
+        Set<String> result = new TreeSet<>(loose);
+        for (Pack pack : packs()) {
+            result.addAll(pack.ids());
+        }
+        return new ArrayList<>(result);
+    }
+
+    /* Returns the ids of the objects that are not in any pack, in sorted
+       order. */
+    List<String> looseIds() {
+        List<String> result = new ArrayList<>();
+        String[] dirs = root.list();
+        if (dirs == null) {
+            return result;
+        }
+        Arrays.sort(dirs);
+        for (String dirName : dirs) {
+            if (dirName.length() == 2) {
+                result.addAll(looseIdsWithPrefix(dirName));
+            }
+        }
+        return result;
+    }
+
+    /* Returns the number of bytes the store takes on disk. */
+    long size() {
+        long result = 0;
+        for (String id : looseIds()) {
+            result += file(id).length();
+        }
+        for (Pack pack : packs()) {
+            result += pack.packFile.length() + pack.indexFile.length();
+        }
+        return result;
+    }
+
+    /* Packs the objects KEEP into a single new pack, replacing the packs
+       there are now, and returns how many of them were stored as deltas.
+       RUNS lists sequences of ids, such as the versions of one file from
+       newest to oldest, whose neighbours are likely to be similar: each
+       object in a run is stored as a delta against the one before it,
+       when that is less than half its size and the chain of deltas is
+       not too long. The objects of KEEP outside every run are stored
+       whole. Objects of the old packs that are not in KEEP are written
+       back loose, for gc to decide on; loose objects that are now packed
+       are deleted, once the new pack is safely on disk. The objects
+       written back are not forced to disk, since nothing reaches them. */
+    int repack(Set<String> keep, Collection<List<String>> runs) {
+        if (keep.isEmpty() && packs().isEmpty()) {
+            return 0;
+        }
+        Pack.Writer writer = new Pack.Writer(packDir());
+        Map<String, Long> offsets = new HashMap<>();
+        Map<String, Integer> depths = new HashMap<>();
+        int deltas = 0;
+        for (List<String> run : runs) {
+            byte[] previous = null;
+            String previousId = null;
+            for (String id : run) {
+                byte[] contents = get(id);
+                if (!offsets.containsKey(id)) {
+                    byte[] delta = null;
+                    if (previous != null && depths.get(previousId) < Pack.MAX_DEPTH) {
+                        delta = Delta.create(previous, contents);
+                    }
+                    if (delta != null && delta.length < contents.length / 2) {
+                        offsets.put(id, writer.addDelta(id, delta, offsets.get(previousId)));
+                        depths.put(id, depths.get(previousId) + 1);
+                        deltas += 1;
+                    } else {
+                        offsets.put(id, writer.add(id, contents));
+                        depths.put(id, 0);
+                    }
+                }
+                previous = contents;
+                previousId = id;
+            }
+        }
+        for (String id : keep) {
+            if (!offsets.containsKey(id)) {
+                offsets.put(id, writer.add(id, get(id)));
+            }
+        }
+        List<Pack> old = packs();
+        for (Pack pack : old) {
+            for (String id : pack.ids()) {
+                File dest = file(id);
+                if (!offsets.containsKey(id) && !dest.isFile()) {
+                    dest.getParentFile().mkdirs();
+                    try {
+                        File temp = File.createTempFile("tmp-", null, dest.getParentFile());
+                        byte[] contents = pack.get(pack.offset(id));
+                        try (OutputStream out = deflating(temp, contents.length)) {
+                            out.write(contents);
+                        }
+                        publish(temp, dest);
+                    } catch (IOException excp) {
+                        throw new IllegalArgumentException(excp.getMessage());
+                    }
+                }
+            }
+        }
+        Pack fresh = writer.finish();
+        synchronized (this) {
+            packs = List.of(fresh);
+        }
+        for (Pack pack : old) {
+            if (!pack.indexFile.equals(fresh.indexFile)) {
+                pack.delete();
+            }
+        }
+        for (String id : offsets.keySet()) {
+            remove(id);
+        }
+        return deltas;
+    }
+
+    /* Returns a stream that writes to TEMP a compressed object with
+       contents of length LENGTH. */
+    private static OutputStream deflating(File temp, long length) throws IOException {
+        OutputStream file = new FileOutputStream(temp);
+        byte[] header = Arrays.copyOf(MAGIC, HEADER_SIZE);
+        ByteBuffer.wrap(header).putLong(MAGIC.length, length);
+        file.write(header);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        return new DeflaterOutputStream(file, deflater, Utils.IO_BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+
+    /* Returns a stream of the contents inflated from IN. */
+    private static InputStream inflating(InputStream in) {
+        Inflater inflater = new Inflater();
+        return new InflaterInputStream(in, inflater, Utils.IO_BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    /* Reads the header of the object IN and returns the length of its
+       contents, or returns -1 and leaves IN where it was if the object
+       is not compressed. */
+    private static long compressedLength(DataInputStream in) throws IOException {
+        in.mark(HEADER_SIZE);
+        byte[] magic = new byte[MAGIC.length];
+        if (in.readNBytes(magic, 0, MAGIC.length) != MAGIC.length
+            || !Arrays.equals(magic, MAGIC)) {
+            in.reset();
+            return -1;
+        }
+        return in.readLong();
+    }
+
+    /* Atomically moves the finished temporary file TEMP to DEST. If another
+       writer got there first, TEMP is discarded, since both hold the same
+       contents. */
+    static void publish(File temp, File dest) throws IOException {
+        try {
+            Files.move(temp.toPath(), dest.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE);
+            Trace.count(Trace.Counter.OBJECTS_CREATED, 1);
+        } catch (IOException excp) {
+            if (!dest.isFile()) {
+                temp.delete();
+                throw excp;
+            }
+            temp.delete();
+        }
+    }
+}
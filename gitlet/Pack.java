@@ -0,0 +1,456 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/* Many objects of one store in a single file, some of them stored as
+   deltas against others, with an index for finding them.
+
+   NAME.pack has a header (magic, version, object count) and then the
+   objects, each a type byte (FULL or DELTA), for a delta the 8-byte
+   offset in the pack of its base, and then the 4-byte lengths of the data
+   and of its compressed form, and the data deflated: the contents
+   themselves, or a Delta against the base.
+   The base of a delta always comes earlier in the same pack, and no
+   chain of deltas is longer than MAX_DEPTH.
+
+   NAME.idx has a header (magic, version, object count), a 256-entry
+   fan-out table as in IdIndex, and 28-byte records (raw id, 8-byte offset)
+   sorted by id. It is memory-mapped, so finding an object takes one
+   fan-out lookup and a binary search among the few records that share
+   its first byte, without reading anything else. Both files are written
+   under temporary names, forced to disk and renamed into place, the index
+   last, so a pack is never seen half written; the directory is forced
+   after the renames, so that a finished pack survives a crash before the
+   copies it replaces are deleted. */
+class Pack {
+
+    /* Longest chain of deltas allowed. */
+    static final int MAX_DEPTH = 50;
+
+    /* Object types. */
+    private static final int FULL = 0;
+    private static final int DELTA = 1;
+
+    private static final int PACK_MAGIC = 0x47504b46;
+    private static final int INDEX_MAGIC = 0x47504b49;
+    private static final int VERSION = 1;
+    private static final int PACK_HEADER_SIZE = 12;
+    private static final int INDEX_HEADER_SIZE = 12 + 256 * 4;
+    private static final int RECORD_SIZE = 28;
+
+    /* The pack and index files. */
+    final File packFile, indexFile;
+
+    /* The pack, open for reading. */
+    private final FileChannel channel;
+
+    /* The mapped index records, and the fan-out table: FANOUT[b] is the
+       number of records whose first byte is at most b. */
+    private final ByteBuffer records;
+    private final int[] fanout = new int[256];
+    private final int count;
+
+    /* Opens the pack whose index is INDEXFILE. */
+    Pack(File indexFile) {
+        this.indexFile = indexFile;
+        String name = indexFile.getName();
+        packFile = new File(indexFile.getParentFile(),
+                            name.substring(0, name.length() - ".idx".length()) + ".pack");
+        try (FileChannel in = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = in.map(FileChannel.MapMode.READ_ONLY, 0, INDEX_HEADER_SIZE);
+            if (header.getInt(0) != INDEX_MAGIC || header.getInt(4) != VERSION) {
+                throw new IllegalArgumentException("unreadable pack index " + name);
+            }
+            count = header.getInt(8);
+            for (int b = 0; b < 256; b += 1) {
+                fanout[b] = header.getInt(12 + 4 * b);
+            }
+            records = in.map(FileChannel.MapMode.READ_ONLY, INDEX_HEADER_SIZE,
+                             (long) count * RECORD_SIZE);
+            channel = FileChannel.open(packFile.toPath(), StandardOpenOption.READ);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /* Returns the number of objects in the pack. */
+    int count() {
+        return count;
+    }
+
+    /* Returns the ids of the objects in the pack, sorted. */
+    List<String> ids() {
+        List<String> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i += 1) {
+            result.add(id(i));
+        }
+        return result;
+    }
+
+    /* Returns the ids in the pack that start with the hex string PREFIX. */
+    List<String> idsWithPrefix(String prefix) {
+        List<String> result = new ArrayList<>();
+        if (prefix.length() < 2 || !isHex(prefix)) {
+            return result;
+        }
+        int first = Integer.parseInt(prefix.substring(0, 2), 16);
+        for (int i = first == 0 ? 0 : fanout[first - 1]; i < fanout[first]; i += 1) {
+            String id = id(i);
+            if (id.startsWith(prefix)) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    /* Returns the offset of the object ID in the pack, or -1. */
+    long offset(String id) {
+        if (id.length() != 40 || !isHex(id)) {
+            return -1;
+        }
+        byte[] key = Utils.fromHex(id);
+        byte[] probe = new byte[20];
+        int first = key[0] & 0xff;
+        int lo = first == 0 ? 0 : fanout[first - 1], hi = fanout[first];
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            records.get(mid * RECORD_SIZE, probe);
+            int cmp = Arrays.compareUnsigned(probe, key);
+            if (cmp == 0) {
+                return records.getLong(mid * RECORD_SIZE + 20);
+            } else if (cmp < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return -1;
+    }
+
+    /* Returns the contents of the object at OFFSET, applying its chain of
+       deltas. */
+    byte[] get(long offset) {
+        List<byte[]> deltas = new ArrayList<>();
+        ByteBuffer header = ByteBuffer.allocate(17);
+        while (true) {
+            header.clear();
+            read(header, offset);
+            header.flip();
+            int type = header.get();
+            long base = type == DELTA ? header.getLong() : -1;
+            byte[] data = new byte[header.getInt()];
+            ByteBuffer stored = ByteBuffer.allocate(header.getInt());
+            read(stored, offset + header.position());
+            Trace.count(Trace.Counter.BYTES_READ, header.position() + stored.capacity());
+            inflate(stored.array(), data);
+            if (type == FULL) {
+                byte[] contents = data;
+                for (int k = deltas.size() - 1; k >= 0; k -= 1) {
+                    contents = Delta.apply(contents, deltas.get(k));
+                }
+                return contents;
+            }
+            if (type != DELTA || deltas.size() > MAX_DEPTH) {
+                throw new IllegalArgumentException("corrupt pack " + packFile.getName());
+            }
+            deltas.add(data);
+            offset = base;
+        }
+    }
+
+    /* Returns {length of the contents, bytes taken in the pack} of the
+       object at OFFSET. Only the start of a delta is inflated, for the
+       length of its target. */
+    long[] size(long offset) {
+        ByteBuffer header = ByteBuffer.allocate(17);
+        read(header, offset);
+        header.flip();
+        int type = header.get();
+        if (type == DELTA) {
+            header.getLong();
+        }
+        int length = header.getInt(), storedLength = header.getInt();
+        long taken = header.position() + storedLength;
+        if (type == FULL) {
+            return new long[] {length, taken};
+        }
+        ByteBuffer stored = ByteBuffer.allocate(Math.min(storedLength, 256));
+        read(stored, offset + header.position());
+        /* Two varints, the lengths of the base and the target. */
+        byte[] start = new byte[Math.min(length, 10)];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(stored.array());
+            int n = inflater.inflate(start);
+            int[] pos = {0};
+            Delta.readVarint(start, pos);
+            if (n == start.length && pos[0] < n) {
+                return new long[] {Delta.readVarint(start, pos), taken};
+            }
+        } catch (DataFormatException | ArrayIndexOutOfBoundsException excp) {
+            /* Fall back to applying the whole chain. */
+        } finally {
+            inflater.end();
+        }
+        return new long[] {get(offset).length, taken};
+    }
+
+    /* Closes the pack and deletes its files. */
+    void delete() {
+        try {
+            channel.close();
+        } catch (IOException excp) {
+            /* Deleting it regardless. */
+        }
+        indexFile.delete();
+        packFile.delete();
+    }
+
+    /* Inflates STORED into DATA, which it must fill exactly. */
+    private void inflate(byte[] stored, byte[] data) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(stored);
+            int n = 0;
+            while (n < data.length && !inflater.finished()) {
+                int k = inflater.inflate(data, n, data.length - n);
+                if (k == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += k;
+            }
+            if (n != data.length) {
+                throw new IllegalArgumentException("corrupt pack " + packFile.getName());
+            }
+        } catch (DataFormatException excp) {
+            throw new IllegalArgumentException("corrupt pack " + packFile.getName());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /* Writes the contents of the object at OFFSET to OUT, inflating it a
+       buffer at a time, and returns true if it is stored whole; returns
+       false, writing nothing, if it is a delta, which needs its base in
+       memory. */
+    boolean copyTo(long offset, OutputStream out) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(17);
+        read(header, offset);
+        header.flip();
+        if (header.get() != FULL) {
+            return false;
+        }
+        int length = header.getInt(), remaining = header.getInt();
+        long position = offset + header.position();
+        Trace.count(Trace.Counter.BYTES_READ, header.position() + remaining);
+        ByteBuffer stored = ByteBuffer.allocate(Math.min(remaining, Utils.IO_BUFFER_SIZE));
+        byte[] buffer = new byte[Utils.IO_BUFFER_SIZE];
+        Inflater inflater = new Inflater();
+        long written = 0;
+        try {
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    if (remaining == 0) {
+                        break;
+                    }
+                    stored.clear().limit(Math.min(stored.capacity(), remaining));
+                    read(stored, position);
+                    int n = stored.position();
+                    if (n == 0) {
+                        break;
+                    }
+                    position += n;
+                    remaining -= n;
+                    inflater.setInput(stored.array(), 0, n);
+                }
+                int k = inflater.inflate(buffer);
+                if (k == 0 && !inflater.needsInput()) {
+                    break;
+                }
+                out.write(buffer, 0, k);
+                written += k;
+            }
+        } catch (DataFormatException excp) {
+            throw new IllegalArgumentException("corrupt pack " + packFile.getName());
+        } finally {
+            inflater.end();
+        }
+        if (written != length || !inflater.finished()) {
+            throw new IllegalArgumentException("corrupt pack " + packFile.getName());
+        }
+        return true;
+    }
+
+    /* Returns true iff S is all hex digits. */
+    private static boolean isHex(String s) {
+        for (int i = 0; i < s.length(); i += 1) {
+            if (Character.digit(s.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* Returns the id of the I'th record. */
+    private String id(int i) {
+        byte[] id = new byte[20];
+        records.get(i * RECORD_SIZE, id);
+        return Utils.toHex(id, 0, 20);
+    }
+
+    /* Fills BUFFER from the pack starting at POSITION, or as much of it as
+       the pack holds. */
+    private void read(ByteBuffer buffer, long position) {
+        try {
+            while (buffer.hasRemaining()) {
+                int n = channel.read(buffer, position);
+                if (n < 0) {
+                    break;
+                }
+                position += n;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /* Writes a new pack into a directory. */
+    static class Writer {
+        private final File dir;
+        private final File temp;
+        private final DataOutputStream out;
+        private final List<byte[]> ids = new ArrayList<>();
+        private final List<Long> offsets = new ArrayList<>();
+        private long position = PACK_HEADER_SIZE;
+        private final Deflater deflater = new Deflater();
+        private final byte[] buffer = new byte[Utils.IO_BUFFER_SIZE];
+
+        Writer(File dir) {
+            this.dir = dir;
+            try {
+                dir.mkdirs();
+                temp = File.createTempFile("tmp-", null, dir);
+                out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(temp), Utils.IO_BUFFER_SIZE));
+                out.writeInt(PACK_MAGIC);
+                out.writeInt(VERSION);
+                /* The count is filled in by finish. */
+                out.writeInt(0);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        /* Adds the object ID with CONTENTS and returns its offset. */
+        long add(String id, byte[] contents) {
+            return write(id, FULL, -1, contents);
+        }
+
+        /* Adds the object ID as DELTA against the object at BASE and returns
+           its offset. */
+        long addDelta(String id, byte[] delta, long base) {
+            return write(id, DELTA, base, delta);
+        }
+
+        private long write(String id, int type, long base, byte[] data) {
+            long offset = position;
+            deflater.reset();
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream stored = new ByteArrayOutputStream(data.length / 2 + 64);
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                stored.write(buffer, 0, n);
+            }
+            try {
+                out.writeByte(type);
+                if (type == DELTA) {
+                    out.writeLong(base);
+                }
+                out.writeInt(data.length);
+                out.writeInt(stored.size());
+                stored.writeTo(out);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            position += 1 + (type == DELTA ? 8 : 0) + 8 + stored.size();
+            ids.add(Utils.fromHex(id));
+            offsets.add(offset);
+            return offset;
+        }
+
+        /* Writes the index, puts both files in place and returns the pack. */
+        Pack finish() {
+            Integer[] order = new Integer[ids.size()];
+            for (int i = 0; i < order.length; i += 1) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparing(i -> ids.get(i), Arrays::compareUnsigned));
+            int[] counts = new int[256];
+            byte[] sorted = new byte[20 * order.length];
+            for (int k = 0; k < order.length; k += 1) {
+                byte[] id = ids.get(order[k]);
+                System.arraycopy(id, 0, sorted, 20 * k, 20);
+                counts[id[0] & 0xff] += 1;
+            }
+            String name = "pack-" + Utils.sha1(sorted);
+            deflater.end();
+            try {
+                out.close();
+                try (FileChannel channel = FileChannel.open(temp.toPath(),
+                                                            StandardOpenOption.WRITE)) {
+                    channel.write(ByteBuffer.allocate(4).putInt(0, order.length), 8);
+                    channel.force(true);
+                }
+                File index = File.createTempFile("tmp-", null, dir);
+                FileOutputStream indexOut = new FileOutputStream(index);
+                try (DataOutputStream idx = new DataOutputStream(new BufferedOutputStream(
+                         indexOut, Utils.IO_BUFFER_SIZE))) {
+                    idx.writeInt(INDEX_MAGIC);
+                    idx.writeInt(VERSION);
+                    idx.writeInt(order.length);
+                    int sum = 0;
+                    for (int b = 0; b < 256; b += 1) {
+                        sum += counts[b];
+                        idx.writeInt(sum);
+                    }
+                    for (int k = 0; k < order.length; k += 1) {
+                        idx.write(sorted, 20 * k, 20);
+                        idx.writeLong(offsets.get(order[k]));
+                    }
+                    idx.flush();
+                    indexOut.getFD().sync();
+                }
+                Files.move(temp.toPath(), new File(dir, name + ".pack").toPath(),
+                           StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                File indexFile = new File(dir, name + ".idx");
+                Files.move(index.toPath(), indexFile.toPath(),
+                           StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                /* Both names must be durable before any copy elsewhere is removed. */
+                Utils.syncDirectory(dir);
+                return new Pack(indexFile);
+            } catch (IOException excp) {
+                temp.delete();
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/* "gitlet repack": gathers every object that a branch or the staging area
+   can reach into one pack per store, storing each version of a file as a
+   delta against the next newer one.
+
+   The commits reachable from the branch heads are visited newest first,
+   and their trees walked without entering any tree twice, so each change
+   to a file is seen once, in order from newest to oldest. The versions of
+   each path, and of each directory's tree, form a run for
+   ObjectStore.repack; the newest version is stored whole, so the objects
+   most often read need the fewest deltas applied. Objects that nothing
+   reaches are left loose, for gc. */
+class Repack {
+
+    /* The repository. */
+    private final Container container;
+
+    /* Ids of the reachable commits, trees and blobs. */
+    private final Set<String> commits = new LinkedHashSet<>();
+    private final Set<String> trees = new HashSet<>();
+    private final Set<String> blobs = new HashSet<>();
+
+    /* Versions of each path's blob and of each directory's tree, newest first. */
+    private final Map<String, List<String>> blobRuns = new LinkedHashMap<>();
+    private final Map<String, List<String>> treeRuns = new LinkedHashMap<>();
+
+    Repack(Container container) {
+        this.container = container;
+    }
+
+    /* Repacks the repository and prints what that did. */
+    void run() {
+        collect();
+        ObjectStore[] stores = {ObjectStore.COMMITS, ObjectStore.TREES, ObjectStore.BLOBS};
+        long before = 0, after = 0;
+        for (ObjectStore store : stores) {
+            before += store.size();
+        }
+        int deltas = ObjectStore.COMMITS.repack(commits, List.of())
+            + ObjectStore.TREES.repack(trees, treeRuns.values())
+            + ObjectStore.BLOBS.repack(blobs, blobRuns.values());
+        for (ObjectStore store : stores) {
+            after += store.size();
+        }
+        System.out.println("Packed " + (commits.size() + trees.size() + blobs.size())
+                           + " objects, " + deltas + " as deltas; " + before + " bytes before, "
+                           + after + " bytes after.");
+    }
+
+    /* Finds the reachable objects and their runs. */
+    private void collect() {
+        CommitGraph graph = container.graph();
+        BitSet reached = new BitSet();
+        for (String id : container.branchMap.values()) {
+            Commit commit = Commit.load(id);
+            if (commit == null) {
+                continue;
+            }
+            for (int pos = graph.position(commit); pos >= 0 && !reached.get(pos);
+                 pos = graph.parent(pos)) {
+                reached.set(pos);
+            }
+        }
+        for (int pos = reached.previousSetBit(graph.size() - 1); pos >= 0;
+             pos = reached.previousSetBit(pos - 1)) {
+            Commit commit = Commit.read(graph.id(pos));
+            commits.add(commit.id);
+            if (commit.treeId == null) {
+                for (Map.Entry<String, String> file : commit.filesMap.entrySet()) {
+                    addBlob(file.getKey(), file.getValue());
+                }
+            } else {
+                walk(commit.treeId, "");
+            }
+        }
+        for (Map.Entry<String, String> file : container.stagingArea.entrySet()) {
+            if (ObjectStore.BLOBS.contains(file.getValue())) {
+                addBlob(file.getKey(), file.getValue());
+            }
+        }
+    }
+
+    /* Adds the tree ID of the directory PREFIX and everything under it,
+       unless it has been seen. */
+    private void walk(String id, String prefix) {
+        if (!trees.add(id)) {
+            return;
+        }
+        append(treeRuns, prefix, id);
+        Tree tree = Codec.decodeTree(ObjectStore.TREES.get(id));
+        for (Map.Entry<String, String> blob : tree.blobs.entrySet()) {
+            addBlob(prefix + blob.getKey(), blob.getValue());
+        }
+        for (Map.Entry<String, String> child : tree.trees.entrySet()) {
+            walk(child.getValue(), prefix + child.getKey() + "/");
+        }
+    }
+
+    /* Adds the blob ID as a version of PATH. */
+    private void addBlob(String path, String id) {
+        blobs.add(id);
+        append(blobRuns, path, id);
+    }
+
+    /* Appends ID to the run for KEY, unless it already ends with it. */
+    private static void append(Map<String, List<String>> runs, String key, String id) {
+        List<String> run = runs.computeIfAbsent(key, k -> new ArrayList<>());
+        if (run.isEmpty() || !run.get(run.size() - 1).equals(id)) {
+            run.add(id);
+        }
+    }
+}
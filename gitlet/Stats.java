@@ -0,0 +1,328 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/* "gitlet count-objects" and "gitlet stats": how large a repository is,
+   and where its bytes go.
+
+   Both start with one pass over every commit, tree and blob in the
+   object stores, loose or packed, on the worker pool, reading no more of
+   each object than its header: the length of its contents, and the bytes
+   it takes on disk, compressed and perhaps as a delta. count-objects
+   reports just the totals of that pass.
+
+   stats also finds what each branch reaches. Commits are walked by
+   parent position in the commit graph, as gc walks them, and the trees of
+   every reachable commit are read once, a level at a time on the worker
+   pool, recording the first path seen for each blob. Each branch is then
+   walked over the trees in memory. An object reached by one branch alone
+   is that branch's unique footprint, which would go if only that branch
+   were removed; an object that neither a branch nor the staging area
+   reaches is unreachable, and would go in a gc (after a repack, if it is
+   packed). The depth of a branch is the number of parents between its
+   head and Container.firstCommit. */
+class Stats {
+
+    /* Number of blobs listed as the largest. */
+    private static final int LARGEST = 10;
+
+    /* The stores, and the names they are reported under. */
+    private static final ObjectStore[] STORES = {
+        ObjectStore.COMMITS, ObjectStore.TREES, ObjectStore.BLOBS};
+    private static final String[] KINDS = {"commits", "trees", "blobs"};
+
+    /* The repository. */
+    private final Container container;
+
+    /* {length of the contents, bytes on disk} of each object, by store. */
+    private final List<Map<String, long[]>> sizes = new ArrayList<>();
+
+    /* Number of loose objects, by store. */
+    private final int[] loose = new int[STORES.length];
+
+    /* Decoded trees, by id, and the first path seen for each blob. */
+    private final Map<String, Tree> trees = new ConcurrentHashMap<>();
+    private final Map<String, String> paths = new ConcurrentHashMap<>();
+
+    Stats(Container container) {
+        this.container = container;
+    }
+
+    /* Prints the number and size of the objects. */
+    void countObjects() {
+        measure();
+        StringBuilder counts = new StringBuilder();
+        long raw = 0, stored = 0;
+        int looseTotal = 0, all = 0;
+        for (int s = 0; s < STORES.length; s += 1) {
+            long[] total = total(sizes.get(s).values());
+            raw += total[0];
+            stored += total[1];
+            looseTotal += loose[s];
+            all += sizes.get(s).size();
+            counts.append(s == 0 ? "" : ", ").append(sizes.get(s).size()).append(' ')
+                .append(KINDS[s]);
+        }
+        System.out.println(counts + "; " + looseTotal + " loose, " + (all - looseTotal)
+                           + " packed; " + stored + " bytes stored (" + raw
+                           + " uncompressed).");
+    }
+
+    /* Prints the full report. */
+    void run() {
+        measure();
+        CommitGraph graph = container.graph();
+        Map<String, BitSet> branches = new TreeMap<>();
+        BitSet reachable = new BitSet();
+        for (Map.Entry<String, String> branch : container.branchMap.entrySet()) {
+            BitSet commits = new BitSet();
+            for (int pos = graph.position(branch.getValue()); pos >= 0 && !commits.get(pos);
+                 pos = graph.parent(pos)) {
+                commits.set(pos);
+            }
+            branches.put(branch.getKey(), commits);
+            reachable.or(commits);
+        }
+        Map<String, String> roots = readTrees(reachable);
+        List<String> names = new ArrayList<>(branches.keySet());
+        List<Set<String>> reached = Workers.map(names, name -> reach(branches.get(name), roots));
+        Map<String, Integer> owners = new HashMap<>();
+        for (Set<String> objects : reached) {
+            for (String id : objects) {
+                owners.merge(id, 1, Integer::sum);
+            }
+        }
+        Set<String> staged = new HashSet<>(container.stagingArea.values());
+
+        System.out.println("=== Objects ===");
+        long[] all = new long[2];
+        int looseTotal = 0, count = 0;
+        for (int s = 0; s < STORES.length; s += 1) {
+            long[] total = total(sizes.get(s).values());
+            line(KINDS[s], sizes.get(s).size(), total);
+            all[0] += total[0];
+            all[1] += total[1];
+            looseTotal += loose[s];
+            count += sizes.get(s).size();
+        }
+        line("total", count, all);
+        System.out.println(looseTotal + " loose, " + (count - looseTotal) + " packed in "
+                           + ObjectStore.BLOBS.packCount() + " blob, "
+                           + ObjectStore.TREES.packCount() + " tree and "
+                           + ObjectStore.COMMITS.packCount() + " commit packs");
+        System.out.println();
+
+        System.out.println("=== Metadata ===");
+        long metadata = 0;
+        for (File file : new File[] {Command.containerDir, Journal.JOURNAL_FILE,
+                                     CommitGraph.GRAPH_FILE, IdIndex.INDEX_FILE,
+                                     Index.INDEX_FILE, MessageIndex.DIR}) {
+            long length = length(file);
+            metadata += length;
+            System.out.printf("%-14s %12d bytes%n", file.getName(), length);
+        }
+        System.out.printf("%-14s %12d bytes, %.1f%% of the blobs stored%n", "total", metadata,
+                          percent(metadata, total(sizes.get(2).values())[1]));
+        System.out.println();
+
+        System.out.println("=== Branches ===");
+        String first = container.firstCommitId;
+        int firstGeneration = graph.generation(graph.position(first));
+        for (int b = 0; b < names.size(); b += 1) {
+            String name = names.get(b);
+            long unique = 0, uniqueBytes = 0;
+            for (String id : reached.get(b)) {
+                if (owners.get(id) == 1 && !staged.contains(id)) {
+                    unique += 1;
+                    uniqueBytes += stored(id);
+                }
+            }
+            int head = graph.position(container.branchMap.get(name));
+            System.out.println((name.equals(container.currBranch) ? "*" : " ") + name + ": "
+                               + branches.get(name).cardinality() + " commits, depth "
+                               + (graph.generation(head) - firstGeneration) + ", "
+                               + reached.get(b).size() + " objects, " + unique
+                               + " unique (" + uniqueBytes + " bytes stored)");
+        }
+        System.out.println(names.size() + " branches; first commit " + first);
+        System.out.println();
+
+        System.out.println("=== Unreachable ===");
+        long[] unreachable = new long[2];
+        int[] dead = new int[STORES.length];
+        for (int s = 0; s < STORES.length; s += 1) {
+            for (Map.Entry<String, long[]> object : sizes.get(s).entrySet()) {
+                if (!owners.containsKey(object.getKey())
+                    && !staged.contains(object.getKey())) {
+                    dead[s] += 1;
+                    unreachable[0] += object.getValue()[0];
+                    unreachable[1] += object.getValue()[1];
+                }
+            }
+        }
+        System.out.println(dead[0] + " commits, " + dead[1] + " trees, " + dead[2]
+                           + " blobs; " + unreachable[1] + " bytes stored ("
+                           + unreachable[0] + " uncompressed), "
+                           + String.format("%.1f%%", percent(unreachable[1], all[1]))
+                           + " of all objects");
+        System.out.println();
+
+        System.out.println("=== Largest blobs ===");
+        List<Map.Entry<String, long[]>> blobs = new ArrayList<>(sizes.get(2).entrySet());
+        blobs.sort((x, y) -> Long.compare(y.getValue()[0], x.getValue()[0]));
+        for (Map.Entry<String, long[]> blob : blobs.subList(0, Math.min(LARGEST, blobs.size()))) {
+            String path = paths.get(blob.getKey());
+            System.out.printf("%12d %12d %s %s%n", blob.getValue()[0], blob.getValue()[1],
+                              blob.getKey().substring(0, 10),
+                              path != null ? path : staged.contains(blob.getKey())
+                              ? "(staged)" : "(unreachable)");
+        }
+        System.out.println();
+    }
+
+    /* Measures every object, in one pass over all the stores. */
+    private void measure() {
+        List<String[]> objects = new ArrayList<>();
+        for (int s = 0; s < STORES.length; s += 1) {
+            for (String id : STORES[s].ids()) {
+                objects.add(new String[] {Integer.toString(s), id});
+            }
+            sizes.add(new HashMap<>());
+        }
+        List<long[]> measured = Workers.map(objects, object -> {
+            ObjectStore store = STORES[Integer.parseInt(object[0])];
+            long[] size = store.sizes(object[1]);
+            return new long[] {size[0], size[1], store.isLoose(object[1]) ? 1 : 0};
+        });
+        for (int i = 0; i < objects.size(); i += 1) {
+            int s = Integer.parseInt(objects.get(i)[0]);
+            long[] size = measured.get(i);
+            sizes.get(s).put(objects.get(i)[1], new long[] {size[0], size[1]});
+            loose[s] += (int) size[2];
+        }
+    }
+
+    /* Reads the commits at the graph positions REACHABLE and every tree
+       they reach, and returns the root tree id of each commit id. The
+       blobs of a commit without a tree are recorded as a tree of its own,
+       under its id. */
+    private Map<String, String> readTrees(BitSet reachable) {
+        CommitGraph graph = container.graph();
+        List<Integer> positions = new ArrayList<>(reachable.cardinality());
+        reachable.stream().forEach(positions::add);
+        List<String[]> level = Workers.map(positions, pos -> {
+            Commit commit = Commit.read(graph.id(pos));
+            if (commit.treeId == null) {
+                trees.put(commit.id, new Tree(new TreeMap<>(commit.filesMap), new TreeMap<>()));
+                commit.filesMap.forEach((path, blob) -> paths.putIfAbsent(blob, path));
+            }
+            return new String[] {commit.id, commit.treeId, ""};
+        });
+        Map<String, String> roots = new HashMap<>();
+        for (String[] root : level) {
+            roots.put(root[0], root[1] == null ? root[0] : root[1]);
+        }
+        Set<String> seen = new HashSet<>();
+        while (!level.isEmpty()) {
+            List<String[]> fresh = new ArrayList<>();
+            for (String[] tree : level) {
+                if (tree[1] != null && seen.add(tree[1])) {
+                    fresh.add(tree);
+                }
+            }
+            level = new ArrayList<>();
+            for (List<String[]> children : Workers.map(fresh, this::readTree)) {
+                level.addAll(children);
+            }
+        }
+        return roots;
+    }
+
+    /* Reads the tree {_, ID, PATH} and returns its subtrees in that form. */
+    private List<String[]> readTree(String[] entry) {
+        Tree tree = Codec.decodeTree(ObjectStore.TREES.get(entry[1]));
+        trees.put(entry[1], tree);
+        tree.blobs.forEach((name, blob) -> paths.putIfAbsent(blob, entry[2] + name));
+        List<String[]> children = new ArrayList<>();
+        tree.trees.forEach((name, id) -> children.add(new String[] {null, id, entry[2] + name + "/"}));
+        return children;
+    }
+
+    /* Returns the ids of the commits at the graph positions COMMITS, and of
+       every tree and blob they reach, given the root tree of each commit
+       in ROOTS. */
+    private Set<String> reach(BitSet commits, Map<String, String> roots) {
+        CommitGraph graph = container.graph();
+        Set<String> reached = new HashSet<>();
+        List<String> stack = new ArrayList<>();
+        commits.stream().forEach(pos -> {
+            String id = graph.id(pos);
+            reached.add(id);
+            stack.add(roots.get(id));
+        });
+        while (!stack.isEmpty()) {
+            String id = stack.remove(stack.size() - 1);
+            Tree tree = id == null ? null : trees.get(id);
+            if (tree == null || !reached.add(id) && !roots.containsKey(id)) {
+                continue;
+            }
+            reached.addAll(tree.blobs.values());
+            stack.addAll(tree.trees.values());
+        }
+        return reached;
+    }
+
+    /* Returns the bytes on disk of the object ID, in any store. */
+    private long stored(String id) {
+        for (Map<String, long[]> store : sizes) {
+            long[] size = store.get(id);
+            if (size != null) {
+                return size[1];
+            }
+        }
+        return 0;
+    }
+
+    /* Returns the summed {length, bytes on disk} of SIZES. */
+    private static long[] total(Collection<long[]> sizes) {
+        long[] total = new long[2];
+        for (long[] size : sizes) {
+            total[0] += size[0];
+            total[1] += size[1];
+        }
+        return total;
+    }
+
+    /* Prints a row of the objects table. */
+    private static void line(String kind, int count, long[] total) {
+        System.out.printf("%-8s %10d %14d bytes %14d stored (%.1f%%)%n", kind, count, total[0],
+                          total[1], percent(total[1], total[0]));
+    }
+
+    private static double percent(long part, long whole) {
+        return whole == 0 ? 0.0 : 100.0 * part / whole;
+    }
+
+    /* Returns the bytes in FILE, or in all the files under it. */
+    private static long length(File file) {
+        File[] children = file.listFiles();
+        if (children == null) {
+            return file.length();
+        }
+        long total = 0;
+        for (File child : children) {
+            total += length(child);
+        }
+        return total;
+    }
+}
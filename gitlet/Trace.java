@@ -0,0 +1,271 @@
+package gitlet;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/* Opt-in instrumentation of one run of gitlet: how long its phases took
+   (loading the repository, executing the command, saving it), and counts
+   of the work done in them.
+
+   Tracing is turned on by a first argument of --trace or --trace=json, or
+   else by the system property gitlet.trace or the environment variable
+   GITLET_TRACE set to "summary" or "json". When the run ends, a summary
+   for people or a single line of JSON is written to the standard error,
+   leaving the command's own output alone. Every phase and the run as a
+   whole are also Java Flight Recorder events (gitlet.Phase and
+   gitlet.Command, carrying the counts), recorded whenever a recording
+   that enables them is running, as with
+       java -XX:StartFlightRecording=filename=gitlet.jfr gitlet.Main ...
+   Commands forwarded to a daemon are traced only as a whole, since their
+   work happens in the daemon.
+
+   Counting costs one check of a static flag when tracing is off. */
+class Trace {
+
+    /* The things counted. */
+    enum Counter {
+        BYTES_HASHED, BYTES_READ, BYTES_WRITTEN, OBJECTS_CREATED, FILES_CHECKED_OUT,
+        COMMIT_CACHE_HITS, COMMIT_CACHE_MISSES, TREE_CACHE_HITS, TREE_CACHE_MISSES,
+        INDEX_HITS, INDEX_MISSES;
+
+        private final LongAdder total = new LongAdder();
+
+        /* Returns the name used in reports, as "bytes_hashed". */
+        String key() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /* Whether anything is being counted. */
+    private static boolean on;
+
+    /* Whether to report as JSON, and whether to report at all. */
+    private static boolean json, report;
+
+    /* The command traced, its start time, and the total nanoseconds spent
+       in each phase, in the order first entered. */
+    private static String command;
+    private static long start;
+    private static CommandEvent run;
+    private static final Map<String, Long> PHASES = new LinkedHashMap<>();
+
+    /* Starts tracing the run whose arguments are ARGS, if it is asked for,
+       and returns ARGS without any --trace option. */
+    static String[] start(String... args) {
+        String setting = null;
+        if (args.length > 0 && args[0].startsWith("--trace")) {
+            setting = args[0].equals("--trace") ? "summary" : args[0].substring("--trace=".length());
+            args = Arrays.copyOfRange(args, 1, args.length);
+        } else {
+            setting = System.getProperty("gitlet.trace", System.getenv("GITLET_TRACE"));
+        }
+        if (setting != null && !setting.isEmpty()) {
+            if (!setting.equals("summary") && !setting.equals("json")) {
+                throw new IllegalArgumentException("Invalid trace setting: " + setting);
+            }
+            report = true;
+            json = setting.equals("json");
+        }
+        on = report || (FlightRecorder.isInitialized() && new CommandEvent().isEnabled());
+        command = args.length > 0 ? args[0] : "";
+        if (on) {
+            run = new CommandEvent();
+            run.begin();
+        }
+        start = System.nanoTime();
+        return args;
+    }
+
+    /* Adds N to COUNTER. */
+    static void count(Counter counter, long n) {
+        if (on) {
+            counter.total.add(n);
+        }
+    }
+
+    /* Counts a hit on a cache if HIT, and otherwise a miss. */
+    static void cache(Counter hits, Counter misses, boolean hit) {
+        if (on) {
+            (hit ? hits : misses).total.increment();
+        }
+    }
+
+    /* Returns a phase called NAME, timed until it is closed. */
+    static Phase phase(String name) {
+        return new Phase(name);
+    }
+
+    /* A timed phase of the run. */
+    static final class Phase implements AutoCloseable {
+        private final String name;
+        private final long begun;
+        private final PhaseEvent event;
+
+        private Phase(String name) {
+            this.name = name;
+            this.event = on ? new PhaseEvent() : null;
+            if (event != null) {
+                event.begin();
+            }
+            this.begun = System.nanoTime();
+        }
+
+        @Override
+        public void close() {
+            if (!on) {
+                return;
+            }
+            long elapsed = System.nanoTime() - begun;
+            synchronized (PHASES) {
+                PHASES.merge(name, elapsed, Long::sum);
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.command = command;
+                event.phase = name;
+                event.commit();
+            }
+        }
+    }
+
+    /* Ends the run, reporting on it as asked. */
+    static void finish() {
+        if (!on) {
+            return;
+        }
+        long total = System.nanoTime() - start;
+        CommandEvent event = run;
+        event.end();
+        if (event.shouldCommit()) {
+            event.command = command;
+            event.bytesHashed = Counter.BYTES_HASHED.total.sum();
+            event.bytesRead = Counter.BYTES_READ.total.sum();
+            event.bytesWritten = Counter.BYTES_WRITTEN.total.sum();
+            event.objectsCreated = Counter.OBJECTS_CREATED.total.sum();
+            event.filesCheckedOut = Counter.FILES_CHECKED_OUT.total.sum();
+            event.commit();
+        }
+        if (report) {
+            System.err.print(json ? json(total) : summary(total));
+            System.err.flush();
+        }
+    }
+
+    /* Returns the report for people, on a run that took TOTAL nanoseconds. */
+    private static String summary(long total) {
+        StringBuilder out = new StringBuilder();
+        out.append("trace: ").append(command).append('\n');
+        synchronized (PHASES) {
+            for (Map.Entry<String, Long> phase : PHASES.entrySet()) {
+                out.append(String.format("  %-20s %10.3f ms%n", phase.getKey(),
+                                         phase.getValue() / 1e6));
+            }
+        }
+        out.append(String.format("  %-20s %10.3f ms%n", "total", total / 1e6));
+        for (Counter counter : Counter.values()) {
+            String key = counter.key();
+            if (!key.endsWith("_hits") && !key.endsWith("_misses")) {
+                out.append(String.format("  %-20s %10d%n", key.replace('_', ' '),
+                                         counter.total.sum()));
+            }
+        }
+        cacheLine(out, "commit cache", Counter.COMMIT_CACHE_HITS, Counter.COMMIT_CACHE_MISSES);
+        cacheLine(out, "tree cache", Counter.TREE_CACHE_HITS, Counter.TREE_CACHE_MISSES);
+        cacheLine(out, "stat cache", Counter.INDEX_HITS, Counter.INDEX_MISSES);
+        return out.toString();
+    }
+
+    private static void cacheLine(StringBuilder out, String name, Counter hits, Counter misses) {
+        long h = hits.total.sum(), m = misses.total.sum();
+        out.append(String.format("  %-20s %10d hits, %d misses (%.1f%%)%n", name, h, m,
+                                 h + m == 0 ? 0.0 : 100.0 * h / (h + m)));
+    }
+
+    /* Returns the report as a line of JSON, on a run that took TOTAL
+       nanoseconds. */
+    private static String json(long total) {
+        StringBuilder out = new StringBuilder();
+        out.append("{\"command\":\"").append(escape(command)).append("\",\"phases_ms\":{");
+        String separator = "";
+        synchronized (PHASES) {
+            for (Map.Entry<String, Long> phase : PHASES.entrySet()) {
+                out.append(separator).append('"').append(escape(phase.getKey())).append("\":")
+                    .append(String.format(Locale.ROOT, "%.3f", phase.getValue() / 1e6));
+                separator = ",";
+            }
+        }
+        out.append("},\"total_ms\":").append(String.format(Locale.ROOT, "%.3f", total / 1e6))
+            .append(",\"counters\":{");
+        separator = "";
+        for (Counter counter : Counter.values()) {
+            out.append(separator).append('"').append(counter.key()).append("\":")
+                .append(counter.total.sum());
+            separator = ",";
+        }
+        return out.append("}}\n").toString();
+    }
+
+    private static String escape(String s) {
+        StringBuilder out = new StringBuilder();
+        for (char c : s.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    @Name("gitlet.Phase")
+    @Label("Gitlet Phase")
+    @Category("Gitlet")
+    @Description("A phase of a gitlet command: load, execute or save")
+    static class PhaseEvent extends Event {
+        @Label("Command")
+        String command;
+
+        @Label("Phase")
+        String phase;
+    }
+
+    @Name("gitlet.Command")
+    @Label("Gitlet Command")
+    @Category("Gitlet")
+    @Description("A whole run of gitlet, with counts of the work it did")
+    static class CommandEvent extends Event {
+        @Label("Command")
+        String command;
+
+        @Label("Bytes Hashed")
+        @DataAmount
+        long bytesHashed;
+
+        @Label("Bytes Read")
+        @DataAmount
+        long bytesRead;
+
+        @Label("Bytes Written")
+        @DataAmount
+        long bytesWritten;
+
+        @Label("Objects Created")
+        long objectsCreated;
+
+        @Label("Files Checked Out")
+        long filesCheckedOut;
+    }
+}
@@ -0,0 +1,169 @@
+package gitlet;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/* A directory snapshot: the blob id of each file and the tree id of each
+   subdirectory directly inside it, by name. Trees are stored in
+   ObjectStore.TREES under the SHA-1 of their encoding less its format
+   version (Codec.treeId), so two directories with the same contents have
+   the same id wherever and whenever they occur. A commit records the id of its root tree.
+
+   Paths are relative to the working directory with '/' between names.
+   Building a commit's tree from its parent's rewrites only the trees on
+   the paths that changed; every other subtree is shared by id, unread.
+   Likewise, comparing two trees never descends into a subtree whose id
+   is the same on both sides. */
+class Tree {
+
+    /* Files in this directory: name to blob id. */
+    final TreeMap<String, String> blobs;
+
+    /* Subdirectories: name to tree id. */
+    final TreeMap<String, String> trees;
+
+    /* Most trees held in LOADED at once. */
+    private static final int LOADED_LIMIT = 8192;
+
+    /* Trees recently read or stored in this process, which may be a
+       daemon's that runs command after command. */
+    private static final Map<String, Tree> LOADED = Utils.lruMap(LOADED_LIMIT);
+
+    Tree(TreeMap<String, String> blobs, TreeMap<String, String> trees) {
+        this.blobs = blobs;
+        this.trees = trees;
+    }
+
+    /* Returns the tree ID; a null ID stands for the empty tree. */
+    static Tree load(String id) {
+        if (id == null) {
+            return new Tree(new TreeMap<>(), new TreeMap<>());
+        }
+        Tree tree = LOADED.get(id);
+        Trace.cache(Trace.Counter.TREE_CACHE_HITS, Trace.Counter.TREE_CACHE_MISSES, tree != null);
+        if (tree == null) {
+            tree = Codec.decodeTree(ObjectStore.TREES.get(id));
+            LOADED.put(id, tree);
+        }
+        return tree;
+    }
+
+    /* Stores this tree and returns its id. */
+    String save() {
+        byte[] bytes = Codec.encodeTree(this);
+        String id = Codec.treeId(bytes);
+        ObjectStore.TREES.put(id, bytes);
+        LOADED.put(id, this);
+        return id;
+    }
+
+    /* Stores the trees for FILES, a map from paths to blob ids, and returns
+       the id of the root. */
+    static String write(Map<String, String> files) {
+        return update(null, files);
+    }
+
+    /* Returns the id of the tree made from the tree ROOT by applying
+       CHANGES, a map from paths to new blob ids, or to null for files to
+       remove. Directories left empty are dropped. Only the trees on the
+       changed paths are read and stored. */
+    static String update(String root, Map<String, String> changes) {
+        return update(root, changes, true);
+    }
+
+    private static String update(String id, Map<String, String> changes, boolean root) {
+        if (changes.isEmpty() && (id != null || !root)) {
+            return id;
+        }
+        Tree old = load(id);
+        Tree tree = new Tree(new TreeMap<>(old.blobs), new TreeMap<>(old.trees));
+        HashMap<String, Map<String, String>> below = new HashMap<>();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            String path = change.getKey();
+            int slash = path.indexOf('/');
+            if (slash < 0) {
+                if (change.getValue() == null) {
+                    tree.blobs.remove(path);
+                } else {
+                    tree.blobs.put(path, change.getValue());
+                }
+            } else {
+                below.computeIfAbsent(path.substring(0, slash), k -> new HashMap<>())
+                    .put(path.substring(slash + 1), change.getValue());
+            }
+        }
+        for (Map.Entry<String, Map<String, String>> dir : below.entrySet()) {
+            String child = update(tree.trees.get(dir.getKey()), dir.getValue(), false);
+            if (child == null) {
+                tree.trees.remove(dir.getKey());
+            } else {
+                tree.trees.put(dir.getKey(), child);
+            }
+        }
+        if (!root && tree.blobs.isEmpty() && tree.trees.isEmpty()) {
+            return null;
+        }
+        return tree.save();
+    }
+
+    /* Returns the blob id of PATH in the tree ROOT, or null, reading only
+       the trees along PATH. */
+    static String lookup(String root, String path) {
+        String id = root;
+        int start = 0;
+        for (int slash = path.indexOf('/'); slash >= 0; slash = path.indexOf('/', start)) {
+            id = load(id).trees.get(path.substring(start, slash));
+            if (id == null) {
+                return null;
+            }
+            start = slash + 1;
+        }
+        return load(id).blobs.get(path.substring(start));
+    }
+
+    /* Adds every file in the tree ID to FILES, under its path. */
+    static void flatten(String id, Map<String, String> files) {
+        flatten(id, "", files);
+    }
+
+    private static void flatten(String id, String prefix, Map<String, String> files) {
+        Tree tree = load(id);
+        for (Map.Entry<String, String> blob : tree.blobs.entrySet()) {
+            files.put(prefix + blob.getKey(), blob.getValue());
+        }
+        for (Map.Entry<String, String> sub : tree.trees.entrySet()) {
+            flatten(sub.getValue(), prefix + sub.getKey() + "/", files);
+        }
+    }
+
+    /* Returns the files that differ between the trees A and B, as a map
+       from path to {blob id in A, blob id in B}, either of which is null
+       where the file is missing. Subtrees with equal ids are skipped. */
+    static Map<String, String[]> diff(String a, String b) {
+        Map<String, String[]> result = new TreeMap<>();
+        diff(a, b, "", result);
+        return result;
+    }
+
+    private static void diff(String a, String b, String prefix, Map<String, String[]> result) {
+        if (a != null && a.equals(b)) {
+            return;
+        }
+        Tree ta = load(a), tb = load(b);
+        TreeSet<String> names = new TreeSet<>(ta.blobs.keySet());
+        names.addAll(tb.blobs.keySet());
+        for (String name : names) {
+            String ia = ta.blobs.get(name), ib = tb.blobs.get(name);
+            if (ia == null || !ia.equals(ib)) {
+                result.put(prefix + name, new String[] {ia, ib});
+            }
+        }
+        names = new TreeSet<>(ta.trees.keySet());
+        names.addAll(tb.trees.keySet());
+        for (String name : names) {
+            diff(ta.trees.get(name), tb.trees.get(name), prefix + name + "/", result);
+        }
+    }
+}
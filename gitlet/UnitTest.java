@@ -3,6 +3,20 @@ package gitlet;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.TreeMap;
+
 /* The suite of all JUnit tests for the gitlet package.
    @author
  */
@@ -12,6 +26,147 @@ public class UnitTest {
     public void placeholderTest() {
     }
 
-}
+    @Test
+    public void codecRoundTripTest() {
+        HashMap<String, String> files = new HashMap<>();
+        files.put("wug.txt", Utils.sha1("wug"));
+        files.put("notwug.txt", Utils.sha1("notwug"));
+        Commit parent = new Commit("initial commit", "2018-07-01 00:00:00",
+                                   null, new HashMap<>(), Utils.sha1("initial"));
+        Commit commit = new Commit("added wug", "2018-07-01 00:00:01",
+                                   parent, files, Utils.sha1("added wug"));
+        Commit decoded = Codec.decodeCommit(Codec.encodeCommit(commit));
+        assertEquals(commit.id, decoded.id);
+        assertEquals(commit.message, decoded.message);
+        assertEquals(commit.timeStamp, decoded.timeStamp);
+        assertEquals(parent.id, decoded.parentId);
+        assertEquals(files, decoded.filesMap);
+        assertNull(Codec.decodeCommit(Codec.encodeCommit(parent)).parentId);
+
+        Container container = new Container(parent);
+        container.branchMap.put("other", commit.id);
+        container.stagingArea.put("wug.txt", files.get("wug.txt"));
+        container.untracked = new HashSet<>();
+        container.untracked.add("notwug.txt");
+        Container copy = Codec.decodeContainer(Codec.encodeContainer(container));
+        assertEquals(container.currBranch, copy.currBranch);
+        assertEquals(container.branchMap, copy.branchMap);
+        assertEquals(container.stagingArea, copy.stagingArea);
+        assertEquals(container.untracked, copy.untracked);
+        assertEquals(container.firstCommitId, copy.firstCommitId);
+
+        Tree tree = new Tree(new TreeMap<>(files), new TreeMap<>());
+        byte[] encoded = Codec.encodeTree(tree);
+        String id = Codec.treeId(encoded);
+        encoded[4] += 1;
+        assertEquals(id, Codec.treeId(encoded));
+        assertEquals(files, Codec.decodeTree(encoded).blobs);
+    }
+
+    @Test
+    public void batchWordsTest() {
+        assertEquals(Arrays.asList("commit", "a message"),
+                     Batch.words("  commit \"a message\" "));
+        assertEquals(Arrays.asList("find", "it's", ""),
+                     Batch.words("find it\\'s ''"));
+        assertEquals(Collections.emptyList(), Batch.words("   "));
+    }
+
+    @Test
+    public void fileMapTest() {
+        HashMap<String, String> expected = new HashMap<>();
+        FileMap files = FileMap.EMPTY;
+        Random random = new Random(61);
+        for (int i = 0; i < 5000; i += 1) {
+            /* "Aa" and "BB" share a hash code, so some paths collide. */
+            String path = "d" + random.nextInt(40) + "/" + (random.nextBoolean() ? "Aa" : "BB");
+            if (random.nextInt(3) == 0) {
+                expected.remove(path);
+                files = files.minus(path);
+            } else {
+                expected.put(path, "v" + i);
+                files = files.plus(path, "v" + i);
+            }
+            assertEquals(expected.size(), files.size());
+        }
+        assertEquals(expected, files);
+        assertEquals(files, FileMap.of(expected));
+        assertSame(files, files.plus("d3/BB", files.get("d3/BB")).minus("missing"));
+        FileMap changed = files.plus("new.txt", "v");
+        assertNotEquals(files, changed);
+        assertEquals(files, changed.minus("new.txt"));
+    }
 
+    @Test
+    public void diffTest() {
+        byte[] a = "a\nb\nc\nd\ne\nf\ng\nh\ni\n".getBytes(StandardCharsets.UTF_8);
+        byte[] b = "a\nB\nc\nd\ne\nf\ng\nh\ni\nj".getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new Diff(a, b).writeUnified(new PrintStream(out), "a/f", "b/f");
+        assertEquals("--- a/f\n+++ b/f\n"
+                     + "@@ -1,5 +1,5 @@\n a\n-b\n+B\n c\n d\n e\n"
+                     + "@@ -7,3 +7,4 @@\n g\n h\n i\n+j\n\\ No newline at end of file\n",
+                     out.toString(StandardCharsets.UTF_8));
+        assertTrue(new Diff(a, a).isEmpty());
+        assertFalse(new Diff(a, new byte[0]).isEmpty());
+    }
+
+    @Test
+    public void mergeTest() {
+        byte[] base = "1\n2\n3\n4\n5\n6\n".getBytes(StandardCharsets.UTF_8);
+        byte[] ours = "1\ntwo\n3\n4\nfive\n6\n".getBytes(StandardCharsets.UTF_8);
+        byte[] theirs = "1\n2\n3\n4\nFIVE\n6\nseven".getBytes(StandardCharsets.UTF_8);
+        Merge clean = new Merge(base, ours, base);
+        assertEquals(0, clean.conflicts);
+        assertArrayEquals(ours, clean.result);
+        Merge merge = new Merge(base, ours, theirs);
+        assertEquals(1, merge.conflicts);
+        assertEquals("1\ntwo\n3\n4\n<<<<<<< HEAD\nfive\n=======\nFIVE\n>>>>>>>\n6\nseven",
+                     new String(merge.result, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void deltaTest() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i += 1) {
+            text.append("line ").append(i).append('\n');
+        }
+        byte[] base = text.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] target = text.insert(4000, "new line\n").delete(0, 20).toString()
+            .getBytes(StandardCharsets.UTF_8);
+        byte[] delta = Delta.create(base, target);
+        assertTrue(delta.length < 100);
+        assertArrayEquals(target, Delta.apply(base, delta));
+        assertArrayEquals(base, Delta.apply(target, Delta.create(target, base)));
+        assertArrayEquals(new byte[0], Delta.apply(base, Delta.create(base, new byte[0])));
+    }
+
+    @Test
+    public void racyIndexTest() throws IOException, InterruptedException {
+        File dir = Files.createTempDirectory("gitlet-index").toFile();
+        File saved = new File(dir, "index");
+        File a = new File(dir, "a.txt");
+        Utils.writeContents(a, "before".getBytes(StandardCharsets.UTF_8));
+        FileTime mtime = FileTime.fromMillis(System.currentTimeMillis() - 800);
+        Files.setLastModifiedTime(a.toPath(), mtime);
+        Index index = Index.load(saved);
+        index.id(dir, "a.txt");
+        /* Changed within the same timestamp tick, after it was hashed. */
+        Utils.writeContents(a, "after!".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(a.toPath(), mtime);
+        index.save(saved);
+        Thread.sleep(400);
+        /* A later save for an unrelated change moves past the racy entry. */
+        index = Index.load(saved);
+        Utils.writeContents(new File(dir, "b.txt"), "b".getBytes(StandardCharsets.UTF_8));
+        index.id(dir, "b.txt");
+        index.save(saved);
+        String fresh = Index.load(new File(dir, "none")).id(dir, "a.txt");
+        assertEquals(fresh, Index.load(saved).id(dir, "a.txt"));
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
 
+}
@@ -1,16 +1,27 @@
 package gitlet;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Formatter;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 
 /* Assorted utilities.
@@ -19,28 +30,67 @@ class Utils {
 
     /* SHA-1 HASH VALUES. */
 
+    /* One SHA-1 digest per thread, reused across calls. */
+    private static final ThreadLocal<MessageDigest> SHA1_DIGESTS =
+        ThreadLocal.withInitial(() -> {
+            try {
+                return MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException excp) {
+                throw new IllegalArgumentException(
+                    "System does not support SHA-1");
+            }
+        });
+
+    /* Returns this thread's SHA-1 digest, reset and ready for use. */
+    static MessageDigest sha1Digest() {
+        MessageDigest md = SHA1_DIGESTS.get();
+        md.reset();
+        return md;
+    }
+
     /* Returns the SHA-1 hash of the concatenation of VALS, which may be any
        mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-1");
-            for (Object val : vals) {
-                if (val instanceof byte[]) {
-                    md.update((byte[]) val);
-                } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
-                } else {
-                    throw new IllegalArgumentException("improper type to sha1");
-                }
+        MessageDigest md = sha1Digest();
+        for (Object val : vals) {
+            if (val instanceof byte[]) {
+                md.update((byte[]) val);
+                Trace.count(Trace.Counter.BYTES_HASHED, ((byte[]) val).length);
+            } else if (val instanceof String) {
+                byte[] bytes = ((String) val).getBytes(StandardCharsets.UTF_8);
+                md.update(bytes);
+                Trace.count(Trace.Counter.BYTES_HASHED, bytes.length);
+            } else {
+                throw new IllegalArgumentException("improper type to sha1");
             }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
+        }
+        byte[] digest = md.digest();
+        return toHex(digest, 0, digest.length);
+    }
+
+    /* Returns the SHA-1 hash of the contents of FILE, read in chunks so that
+       the file never has to fit in memory. FILE must be a normal file.
+       Throws IllegalArgumentException in case of problems. */
+    static String sha1(File file) {
+        if (!file.isFile()) {
+            throw new IllegalArgumentException("must be a normal file");
+        }
+        MessageDigest md = sha1Digest();
+        ByteBuffer buffer = ioBuffer();
+        try (FileChannel in = FileChannel.open(file.toPath(),
+                                               StandardOpenOption.READ)) {
+            for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                buffer.flip();
+                md.update(buffer);
+                buffer.clear();
+                Trace.count(Trace.Counter.BYTES_HASHED, n);
+                Trace.count(Trace.Counter.BYTES_READ, n);
             }
-            return result.toString();
-        } catch (NoSuchAlgorithmException excp) {
-            throw new IllegalArgumentException("System does not support SHA-1");
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
         }
+        byte[] digest = md.digest();
+        return toHex(digest, 0, digest.length);
     }
 
     /* Returns the SHA-1 hash of the concatenation of the strings in VALS. */
@@ -48,6 +98,39 @@ class Utils {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /* Hexadecimal digits, indexed by value. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /* Returns the lower-case hexadecimal representation of the LENGTH
+       bytes of BYTES starting at OFFSET. */
+    static String toHex(byte[] bytes, int offset, int length) {
+        char[] result = new char[2 * length];
+        for (int i = 0; i < length; i += 1) {
+            int b = bytes[offset + i] & 0xff;
+            result[2 * i] = HEX_DIGITS[b >>> 4];
+            result[2 * i + 1] = HEX_DIGITS[b & 0xf];
+        }
+        return new String(result);
+    }
+
+    /* Returns the bytes denoted by the hexadecimal string HEX. Throws
+       IllegalArgumentException if HEX is not a well-formed hex string. */
+    static byte[] fromHex(String hex) {
+        if (hex.length() % 2 != 0) {
+            throw new IllegalArgumentException("malformed id: " + hex);
+        }
+        byte[] result = new byte[hex.length() / 2];
+        for (int i = 0; i < result.length; i += 1) {
+            int hi = Character.digit(hex.charAt(2 * i), 16);
+            int lo = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (hi < 0 || lo < 0) {
+                throw new IllegalArgumentException("malformed id: " + hex);
+            }
+            result[i] = (byte) ((hi << 4) | lo);
+        }
+        return result;
+    }
+
     /* FILE DELETION */
 
     /* Deletes FILE if it exists and is not a directory.  Returns true if FILE
@@ -75,6 +158,21 @@ class Utils {
 
     /* READING AND WRITING FILE CONTENTS */
 
+    /* Size of the buffers used to stream file contents. */
+    static final int IO_BUFFER_SIZE = 1 << 16;
+
+    /* One streaming buffer per thread, reused across calls. */
+    private static final ThreadLocal<ByteBuffer> IO_BUFFERS =
+        ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(IO_BUFFER_SIZE));
+
+    /* Returns this thread's streaming buffer, cleared and ready for use.
+       Callers must not hold on to it across calls that may also use it. */
+    static ByteBuffer ioBuffer() {
+        ByteBuffer buffer = IO_BUFFERS.get();
+        buffer.clear();
+        return buffer;
+    }
+
     /* Return the entire contents of FILE as a byte array. FILE must be a normal
        file. Throws IllegalArgumentException in case of problems. */
     static byte[] readContents(File file) {
@@ -82,7 +180,9 @@ class Utils {
             throw new IllegalArgumentException("must be a normal file");
         }
         try {
-            return Files.readAllBytes(file.toPath());
+            byte[] contents = Files.readAllBytes(file.toPath());
+            Trace.count(Trace.Counter.BYTES_READ, contents.length);
+            return contents;
         } catch (IOException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
@@ -97,7 +197,54 @@ class Utils {
                     new IllegalArgumentException("cannot overwrite directory");
             }
             Files.write(file.toPath(), bytes);
+            Trace.count(Trace.Counter.BYTES_WRITTEN, bytes.length);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /* Forces the entries of the directory DIR to disk, so that files
+       renamed into it survive a crash, where the platform allows
+       directories to be opened. */
+    static void syncDirectory(File dir) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ);
+        } catch (IOException excp) {
+            return;
+        }
+        try {
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /* SERIALIZATION */
+
+    /* Returns a byte array containing the serialized contents of OBJ.
+       Throws IllegalArgumentException in case of problems. */
+    static byte[] serialize(Serializable obj) {
+        try {
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            ObjectOutputStream objectStream = new ObjectOutputStream(stream);
+            objectStream.writeObject(obj);
+            objectStream.close();
+            return stream.toByteArray();
         } catch (IOException excp) {
+            throw new IllegalArgumentException("internal error serializing");
+        }
+    }
+
+    /* Returns the object of type EXPECTEDCLASS serialized in BYTES.
+       Throws IllegalArgumentException in case of problems. */
+    static <T extends Serializable> T deserialize(byte[] bytes,
+                                                  Class<T> expectedClass) {
+        try (ObjectInputStream in =
+                 new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return expectedClass.cast(in.readObject());
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
     }
@@ -149,4 +296,43 @@ class Utils {
         return plainFilenamesIn(new File(dir));
     }
 
+    /* Returns the paths, relative to DIR and with '/' between names, of all
+       plain files in DIR and its subdirectories other than .gitlet, in
+       lexicographic order. */
+    static List<String> plainFilePathsIn(File dir) {
+        List<String> paths = new ArrayList<>();
+        plainFilePathsIn(dir, "", paths);
+        Collections.sort(paths);
+        return paths;
+    }
+
+    private static void plainFilePathsIn(File dir, String prefix, List<String> paths) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (child.isFile()) {
+                paths.add(prefix + child.getName());
+            } else if (child.isDirectory()
+                       && !(prefix.isEmpty() && child.getName().equals(".gitlet"))) {
+                plainFilePathsIn(child, prefix + child.getName() + "/", paths);
+            }
+        }
+    }
+
+    /* CACHES */
+
+    /* Returns an empty map that holds at most CAPACITY entries, dropping
+       the least recently used one to make room for another. It is not
+       safe for use by several threads at once, even for lookups alone. */
+    static <K, V> Map<K, V> lruMap(int capacity) {
+        return new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
 }
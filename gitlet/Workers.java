@@ -0,0 +1,82 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/* The bounded pool of worker threads that gitlet uses for I/O-heavy work
+   such as hashing, storing and writing many files. Its size is taken from
+   the system property gitlet.threads or the environment variable
+   GITLET_THREADS, and defaults to the number of available processors. */
+class Workers {
+
+    /* The shared pool, created on first use. */
+    private static ForkJoinPool pool;
+
+    /* Returns the configured number of worker threads (at least 1). */
+    static int parallelism() {
+        String setting = System.getProperty("gitlet.threads");
+        if (setting == null) {
+            setting = System.getenv("GITLET_THREADS");
+        }
+        if (setting != null) {
+            try {
+                return Math.max(1, Integer.parseInt(setting.trim()));
+            } catch (NumberFormatException excp) {
+                throw new IllegalArgumentException("Invalid thread count: " + setting);
+            }
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /* Returns the shared pool. */
+    static synchronized ForkJoinPool pool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(parallelism());
+        }
+        return pool;
+    }
+
+    /* Returns the results of applying FUNCTION to each of ITEMS, in the
+       order of ITEMS. The calls run on the pool unless there is only one
+       item or one thread. If any call throws, the exception thrown by the
+       earliest such item is rethrown once all calls have finished, so the
+       reported error does not depend on scheduling. */
+    static <T, R> List<R> map(List<T> items, Function<? super T, ? extends R> function) {
+        List<R> results = new ArrayList<>(items.size());
+        if (items.size() <= 1 || parallelism() == 1) {
+            for (T item : items) {
+                results.add(function.apply(item));
+            }
+            return results;
+        }
+        List<Callable<R>> tasks = new ArrayList<>(items.size());
+        for (T item : items) {
+            tasks.add(() -> function.apply(item));
+        }
+        RuntimeException failure = null;
+        for (Future<R> future : pool().invokeAll(tasks)) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException excp) {
+                if (failure == null) {
+                    failure = excp.getCause() instanceof RuntimeException
+                        ? (RuntimeException) excp.getCause()
+                        : new IllegalArgumentException(excp.getCause().getMessage());
+                }
+                results.add(null);
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                throw new IllegalArgumentException("interrupted");
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return results;
+    }
+}